@@ -0,0 +1,114 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.onedev.server.model.User;
+
+/**
+ * Decodes an issue detail document with a long history (<tt>/fixtures/issue-journals.json</tt>)
+ * and maps the details of its journals to issue change data, using the Redmine enumerations of
+ * <tt>/fixtures/lookups.json</tt>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalDetailMapperBenchmark {
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+
+	private byte[] issueJson;
+
+	private RedmineIssueDetail issueDetail;
+
+	private JournalDetailMapper mapper;
+
+	@Setup
+	public void setUp() throws IOException {
+		issueJson = loadFixture("issue-journals.json");
+		try (JsonParser parser = jsonFactory.createParser(issueJson)) {
+			issueDetail = RedmineIssueDetail.read(parser);
+		}
+
+		JsonNode lookups = new ObjectMapper().readTree(loadFixture("lookups.json"));
+		Map<String, User> users = new HashMap<>();
+		for (Iterator<Map.Entry<String, JsonNode>> it = lookups.get("users").fields(); it.hasNext();) {
+			Map.Entry<String, JsonNode> entry = it.next();
+			User user = new User();
+			user.setName(entry.getValue().asText());
+			users.put(entry.getKey(), user);
+		}
+		mapper = new JournalDetailMapper(new IssueImportOption(), toMap(lookups.get("users")),
+				toMap(lookups.get("versions")), toMap(lookups.get("statuses")), toMap(lookups.get("trackers")),
+				toMap(lookups.get("priorities")), toMap(lookups.get("categories")), toMap(lookups.get("customFields")),
+				users::get);
+	}
+
+	@Benchmark
+	public RedmineIssueDetail decode() throws IOException {
+		try (JsonParser parser = jsonFactory.createParser(issueJson)) {
+			return RedmineIssueDetail.read(parser);
+		}
+	}
+
+	@Benchmark
+	public void map(Blackhole blackhole) {
+		Set<String> nonExistentLogins = new HashSet<>();
+		for (RedmineIssueDetail.Journal journal: issueDetail.journals)
+			blackhole.consume(mapper.map(journal.details, nonExistentLogins, (kind, name) -> blackhole.consume(name)));
+		blackhole.consume(nonExistentLogins);
+	}
+
+	@Benchmark
+	public void decodeAndMap(Blackhole blackhole) throws IOException {
+		Set<String> nonExistentLogins = new HashSet<>();
+		for (RedmineIssueDetail.Journal journal: decode().journals)
+			blackhole.consume(mapper.map(journal.details, nonExistentLogins, (kind, name) -> blackhole.consume(name)));
+		blackhole.consume(nonExistentLogins);
+	}
+
+	private static byte[] loadFixture(String name) throws IOException {
+		try (InputStream is = JournalDetailMapperBenchmark.class.getResourceAsStream("/fixtures/" + name)) {
+			if (is == null)
+				throw new IOException("Fixture not found: " + name);
+			return IOUtils.toByteArray(is);
+		}
+	}
+
+	private static Map<String, String> toMap(JsonNode node) {
+		Map<String, String> map = new HashMap<>();
+		for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext();) {
+			Map.Entry<String, JsonNode> entry = it.next();
+			map.put(entry.getKey(), entry.getValue().asText());
+		}
+		return map;
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converts a single line repeating a fragment which starts a Textile rule without ending it,
+ * the worst case of regular expressions with lazy quantifiers. The lexer must convert it in time
+ * linear to its length, the regex converter within {@link #BUDGET_MILLIS} (otherwise the text is
+ * imported verbatim).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathologicalInputBenchmark {
+
+	static final long BUDGET_MILLIS = 2000;
+
+	@Param({"*a ", "+b ", "- x", "__a", "!x.png(", "<pre>", "[[a", "@x"})
+	public String fragment;
+
+	@Param({"10000", "100000"})
+	public int length;
+
+	@Param({"lexer", "regex"})
+	public String converter;
+
+	private String text;
+
+	@Setup
+	public void setUp() {
+		StringBuilder builder = new StringBuilder(length + fragment.length());
+		while (builder.length() < length)
+			builder.append(fragment);
+		text = builder.toString();
+
+		// fail early if the lexer is not linear on this input anymore
+		if (converter.equals("lexer"))
+			RedmineTextileLexer.convertTextileToMarkdown(text, new ConversionBudget(BUDGET_MILLIS));
+	}
+
+	@Benchmark
+	public String convert() {
+		if (converter.equals("lexer"))
+			return RedmineTextileLexer.convertTextileToMarkdown(text);
+		try {
+			return RedmineTextileConverter.convertTextileToMarkdown(text, new ConversionBudget(BUDGET_MILLIS));
+		} catch (ConversionBudget.BudgetExceededException e) {
+			return text;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Converts all texts of a corpus (<tt>/corpus/&lt;name&gt;.textile</tt>, texts separated by
+ * lines <tt>%%</tt>) from Textile to Markdown per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextileConverterBenchmark {
+
+	@Param({"short-notes", "long-log", "nested-lists", "big-pre"})
+	public String corpus;
+
+	@Param({"lexer", "regex"})
+	public String converter;
+
+	private List<String> texts;
+
+	@Setup
+	public void setUp() throws IOException {
+		texts = loadCorpus(corpus);
+	}
+
+	@Benchmark
+	public void convert(Blackhole blackhole) {
+		if (converter.equals("lexer")) {
+			for (String text: texts)
+				blackhole.consume(RedmineTextileLexer.convertTextileToMarkdown(text));
+		} else {
+			for (String text: texts)
+				blackhole.consume(RedmineTextileConverter.convertTextileToMarkdown(text));
+		}
+	}
+
+	static List<String> loadCorpus(String name) throws IOException {
+		String content;
+		try (InputStream is = TextileConverterBenchmark.class.getResourceAsStream("/corpus/" + name + ".textile")) {
+			if (is == null)
+				throw new IOException("Corpus not found: " + name);
+			content = IOUtils.toString(is, StandardCharsets.UTF_8);
+		}
+		List<String> texts = new ArrayList<>();
+		for (String text: content.split("(?m)^%%\n"))
+			texts.add(text);
+		return texts;
+	}
+
+}
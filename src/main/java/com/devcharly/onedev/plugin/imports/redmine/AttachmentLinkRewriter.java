@@ -0,0 +1,81 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.annotation.Nullable;
+
+/**
+ * Rewrites references to attachments of an issue in one scan of a text: links
+ * <tt>(filename)</tt>, as in converted images <tt>![filename](filename)</tt>, get the
+ * OneDev URL of the attachment, and Textile images <tt>!filename!</tt> which were not
+ * converted (unknown image extension or conversion disabled) become Markdown images.
+ */
+class AttachmentLinkRewriter {
+
+	private final Map<String, String> urls = new HashMap<>();
+
+	private final TreeSet<Integer> nameLengths = new TreeSet<>();
+
+	// ascending lengths of attached file names, so that a text is scanned in time proportional to its
+	// length times the number of distinct lengths
+	private int[] lengths;
+
+	/**
+	 * Adds given attachment. References to a file name attached more than once get the URL of
+	 * the first attachment.
+	 */
+	void add(String filename, String url) {
+		if (!filename.isEmpty() && urls.putIfAbsent(filename, url) == null && nameLengths.add(filename.length()))
+			lengths = null;
+	}
+
+	@Nullable
+	String rewrite(@Nullable String text) {
+		if (text == null || urls.isEmpty())
+			return text;
+		if (lengths == null)
+			lengths = nameLengths.stream().mapToInt(Integer::intValue).toArray();
+
+		StringBuilder builder = null;
+		int copied = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			boolean image = c == '!' && (i == 0 || Character.isWhitespace(text.charAt(i - 1)));
+			if (c != '(' && !image)
+				continue;
+
+			// file names may contain the closing character, so try all names from the shortest one
+			char close = image ? '!' : ')';
+			for (int nameLength: lengths) {
+				int end = i + 1 + nameLength;
+				if (end >= length)
+					break;
+				if (text.charAt(end) != close)
+					continue;
+				String filename = text.substring(i + 1, end);
+				String url = urls.get(filename);
+				if (url == null)
+					continue;
+
+				if (builder == null)
+					builder = new StringBuilder(length + 64);
+				builder.append(text, copied, i);
+				if (image)
+					builder.append("![").append(filename).append("](").append(url).append(')');
+				else
+					builder.append('(').append(url).append(')');
+				copied = end + 1;
+				i = end;
+				break;
+			}
+		}
+		if (builder == null)
+			return text;
+		builder.append(text, copied, length);
+		return builder.toString();
+	}
+
+}
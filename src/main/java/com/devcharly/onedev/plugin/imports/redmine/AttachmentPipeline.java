@@ -0,0 +1,389 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.onedev.commons.utils.TaskLogger;
+
+/**
+ * Downloads attachments of imported issues with a bounded worker pool into spool files, so
+ * that mapping issues does not wait for large or slow downloads. Spooled attachments are
+ * stored in OneDev (and links to them rewritten) when the batch of their issue is saved.
+ * Downloads share an optional bandwidth limit.
+ * <p>
+ * Attachments are deduplicated by their Redmine digest: content verified against its digest
+ * is kept in a store keyed by digest and size, and further attachments with the same digest
+ * are stored from there instead of being downloaded again. Files of the store are counted
+ * while in use. By default, the store is a temporary directory in which content no longer in
+ * use is only kept if it was requested more than once, and which is removed after the import.
+ * If enabled, the store is kept below the OneDev site directory for later imports, and the
+ * least recently used content not in use is removed whenever it grows too large.
+ * <p>
+ * Each pipeline downloads into a spool directory of its own, so that imports from the same
+ * server can share its store.
+ */
+class AttachmentPipeline implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AttachmentPipeline.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String SPOOL_SUFFIX = ".tmp";
+
+	private static final String SPOOL_DIR_PREFIX = "spool";
+
+	// open pipelines, guarded by the class lock like the files retained by them
+	private static final Set<AttachmentPipeline> pipelines = new HashSet<>();
+
+	private final RedmineClient client;
+
+	private final TaskLogger taskLogger;
+
+	private final ThreadPoolExecutor executor;
+
+	@Nullable
+	private final RateLimiter bandwidthLimiter;
+
+	private final File storeDir;
+
+	private final File spoolDir;
+
+	private final boolean persistent;
+
+	private final long maxStoreSize;
+
+	private final AtomicLong storeSize = new AtomicLong();
+
+	private final Map<String, CompletableFuture<File>> downloads = new ConcurrentHashMap<>();
+
+	// number of downloads of store files not released yet, and of requests by key
+	private final Map<File, Integer> retainedFiles = new HashMap<>();
+
+	private final Map<String, Integer> requestCounts = new HashMap<>();
+
+	private final AtomicLong deduplicatedCount = new AtomicLong();
+
+	private final AtomicLong deduplicatedBytes = new AtomicLong();
+
+	AttachmentPipeline(ImportServer server, RedmineClient client, TaskLogger taskLogger) {
+		this.client = client;
+		this.taskLogger = taskLogger;
+		int concurrency = Math.max(1, server.getAttachmentConcurrency());
+		executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder().setNameFormat("redmine-import-attachments-%d").setDaemon(true).build());
+		bandwidthLimiter = server.getAttachmentBandwidth() > 0
+				? RateLimiter.create(server.getAttachmentBandwidth() * 1024.0)
+				: null;
+
+		persistent = server.getAttachmentStoreMaxSize() > 0;
+		maxStoreSize = server.getAttachmentStoreMaxSize() * 1024L * 1024L;
+		try {
+			if (persistent) {
+				String serverKey = Hashing.sha256().hashString(server.getApiUrl(), StandardCharsets.UTF_8).toString();
+				storeDir = new File(ImportUtils.getWorkDir("attachments"), serverKey);
+				if (!storeDir.exists() && !storeDir.mkdirs())
+					throw new RuntimeException("Unable to create directory: " + storeDir);
+				// in the store directory, so that spooled content is moved to the store atomically
+				spoolDir = Files.createTempDirectory(storeDir.toPath(), SPOOL_DIR_PREFIX).toFile();
+			} else {
+				storeDir = Files.createTempDirectory("redmine-import-attachments").toFile();
+				spoolDir = storeDir;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		synchronized (AttachmentPipeline.class) {
+			pipelines.add(this);
+		}
+		if (persistent)
+			prune();
+	}
+
+	/**
+	 * Starts downloading given attachment in the background, unless an attachment with same
+	 * digest was downloaded before.
+	 *
+	 * @return file holding the attachment content once completed, to be passed to
+	 * 			{@link #release(File)} once stored
+	 */
+	CompletableFuture<File> download(RedmineIssueDetail.Attachment attachment) {
+		String key = getKey(attachment);
+		if (key == null)
+			return CompletableFuture.supplyAsync(() -> spool(attachment, null), executor);
+
+		File keyFile = new File(storeDir, key);
+		CompletableFuture<File> download;
+		synchronized (AttachmentPipeline.class) {
+			// retained before checking the store, so that it is not pruned meanwhile
+			retainedFiles.merge(keyFile, 1, Integer::sum);
+			requestCounts.merge(key, 1, Integer::sum);
+			download = downloads.get(key);
+			if (download == null && keyFile.exists()) {
+				// stored by a previous import
+				keyFile.setLastModified(System.currentTimeMillis());
+				deduplicatedCount.incrementAndGet();
+				deduplicatedBytes.addAndGet(attachment.filesize);
+				return CompletableFuture.completedFuture(keyFile);
+			}
+			if (download == null) {
+				download = new CompletableFuture<>();
+				downloads.put(key, download);
+				CompletableFuture<File> newDownload = download;
+				CompletableFuture.supplyAsync(() -> spool(attachment, key), executor).whenComplete((spooled, e) -> {
+					if (e != null)
+						newDownload.completeExceptionally(e);
+					else
+						newDownload.complete(spooled);
+				});
+				return retainUntilStored(newDownload, keyFile);
+			}
+		}
+
+		// content may not match its digest, in which case it is downloaded again
+		return retainUntilStored(download.thenComposeAsync(file -> {
+			if (file.getName().endsWith(SPOOL_SUFFIX))
+				return CompletableFuture.supplyAsync(() -> spool(attachment, null), executor);
+			deduplicatedCount.incrementAndGet();
+			deduplicatedBytes.addAndGet(attachment.filesize);
+			return CompletableFuture.completedFuture(file);
+		}, executor), keyFile);
+	}
+
+	/**
+	 * Releases given retained store file once given download completed, unless it completed
+	 * with that file, which is released once stored then.
+	 */
+	private CompletableFuture<File> retainUntilStored(CompletableFuture<File> download, File keyFile) {
+		return download.whenComplete((file, e) -> {
+			if (e != null || !file.equals(keyFile))
+				release(keyFile);
+		});
+	}
+
+	/**
+	 * Waits for given download to complete.
+	 */
+	static File await(CompletableFuture<File> download) {
+		try {
+			return download.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Deletes given downloaded file once stored, unless it is kept for deduplication.
+	 */
+	void release(File file) {
+		if (file.getName().endsWith(SPOOL_SUFFIX)) {
+			delete(file);
+			return;
+		}
+		synchronized (AttachmentPipeline.class) {
+			Integer count = retainedFiles.computeIfPresent(file, (k, v) -> v > 1 ? v - 1 : null);
+			// content requested once is not expected again
+			if (count == null && !persistent && requestCounts.getOrDefault(file.getName(), 0) < 2) {
+				downloads.remove(file.getName());
+				delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Number of attachments waiting for a download thread.
+	 */
+	int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	void addTo(ImportResult result) {
+		if (deduplicatedCount.get() != 0) {
+			result.statistics.put("Deduplicated attachments", String.valueOf(deduplicatedCount.get()));
+			result.statistics.put("Attachment download saved by deduplication",
+					FileUtils.byteCountToDisplaySize(deduplicatedBytes.get()));
+		}
+	}
+
+	/**
+	 * Key of attachment content in the store, or <tt>null</tt> if Redmine has no digest for it.
+	 */
+	@Nullable
+	private static String getKey(RedmineIssueDetail.Attachment attachment) {
+		if (getDigestAlgorithm(attachment.digest) == null)
+			return null;
+		return attachment.digest.toLowerCase() + "-" + attachment.filesize;
+	}
+
+	/**
+	 * Algorithm of given Redmine digest: MD5 for attachments uploaded before Redmine 4.2, SHA-256 since.
+	 */
+	@Nullable
+	private static String getDigestAlgorithm(@Nullable String digest) {
+		if (digest == null)
+			return null;
+		else if (digest.length() == 32)
+			return "MD5";
+		else if (digest.length() == 64)
+			return "SHA-256";
+		else
+			return null;
+	}
+
+	/**
+	 * Downloads given attachment into a spool file, moved to given key in the store if its
+	 * content matches its digest.
+	 */
+	private File spool(RedmineIssueDetail.Attachment attachment, @Nullable String key) {
+		long start = System.nanoTime();
+		File spooled = client.download(attachment.contentUrl, taskLogger, is -> {
+			MessageDigest messageDigest = null;
+			if (key != null) {
+				try {
+					messageDigest = MessageDigest.getInstance(getDigestAlgorithm(attachment.digest));
+				} catch (NoSuchAlgorithmException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			File file = File.createTempFile("attachment", SPOOL_SUFFIX, spoolDir);
+			try {
+				copy(is, file, messageDigest);
+				if (messageDigest != null) {
+					String digest = BaseEncoding.base16().lowerCase().encode(messageDigest.digest());
+					if (digest.equalsIgnoreCase(attachment.digest)) {
+						File keyFile = new File(storeDir, key);
+						long length = file.length();
+						Files.move(file.toPath(), keyFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+								StandardCopyOption.ATOMIC_MOVE);
+						if (persistent && storeSize.addAndGet(length) > maxStoreSize)
+							prune();
+						return keyFile;
+					}
+					logger.warn("Content of attachment " + attachment.contentUrl + " does not match its digest, "
+							+ "not deduplicating it");
+				}
+				return file;
+			} catch (IOException | RuntimeException e) {
+				delete(file);
+				throw e;
+			}
+		});
+		client.getMetrics().get(ImportMetrics.ATTACHMENTS).record(System.nanoTime() - start, spooled.length());
+		return spooled;
+	}
+
+	private void copy(InputStream is, File file, @Nullable MessageDigest messageDigest) throws IOException {
+		try (OutputStream os = new FileOutputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				if (bandwidthLimiter != null && count != 0)
+					bandwidthLimiter.acquire(count);
+				if (messageDigest != null)
+					messageDigest.update(buffer, 0, count);
+				os.write(buffer, 0, count);
+			}
+		}
+	}
+
+	/**
+	 * Removes spool directories left by interrupted imports and, if the persistent store is too
+	 * large, the least recently used attachments not in use by any import.
+	 */
+	private void prune() {
+		synchronized (AttachmentPipeline.class) {
+			Set<File> spoolDirs = new HashSet<>();
+			Set<File> filesInUse = new HashSet<>();
+			for (AttachmentPipeline pipeline: pipelines) {
+				spoolDirs.add(pipeline.spoolDir);
+				filesInUse.addAll(pipeline.retainedFiles.keySet());
+			}
+
+			File[] files = storeDir.listFiles();
+			if (files == null)
+				return;
+
+			List<File> remaining = new ArrayList<>();
+			long size = 0;
+			for (File file: files) {
+				if (file.isDirectory()) {
+					if (file.getName().startsWith(SPOOL_DIR_PREFIX) && !spoolDirs.contains(file))
+						FileUtils.deleteQuietly(file);
+				} else {
+					remaining.add(file);
+					size += file.length();
+				}
+			}
+
+			if (size > maxStoreSize) {
+				File[] sorted = remaining.toArray(new File[0]);
+				Arrays.sort(sorted, Comparator.comparingLong(File::lastModified));
+				for (File file: sorted) {
+					if (size <= maxStoreSize * 9 / 10)
+						break;
+					if (!filesInUse.contains(file)) {
+						size -= file.length();
+						delete(file);
+					}
+				}
+			}
+			storeSize.set(size);
+		}
+	}
+
+	private static void delete(File file) {
+		if (file.exists() && !file.delete())
+			logger.warn("Unable to delete " + file);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		synchronized (AttachmentPipeline.class) {
+			pipelines.remove(this);
+		}
+		FileUtils.deleteQuietly(spoolDir);
+	}
+
+}
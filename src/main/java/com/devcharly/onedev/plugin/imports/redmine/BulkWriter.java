@@ -0,0 +1,82 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+
+import io.onedev.server.OneDev;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.persistence.dao.Dao;
+
+/**
+ * Inserts entities of an import in bulk. Added entities are grouped by type and written with
+ * JDBC statement batching, flushing and clearing the session after every batch, so that
+ * consecutive inserts are of the same type and can be sent to the database together.
+ * <p>
+ * Entities are written in the order their types were first added, so parents must be added
+ * (or saved) before their children. Counts and timing of written entities are reported in
+ * the {@link ImportResult}.
+ */
+class BulkWriter {
+
+	static final int BATCH_SIZE = 100;
+
+	private final Map<Class<?>, List<AbstractEntity>> pendingEntities = new LinkedHashMap<>();
+
+	private final Map<String, Long> counts = new LinkedHashMap<>();
+
+	private long writeNanos;
+
+	void add(AbstractEntity entity) {
+		pendingEntities.computeIfAbsent(entity.getClass(), k -> new ArrayList<>()).add(entity);
+	}
+
+	/**
+	 * Writes all added entities in the current session. Entities saved before in the session
+	 * are detached afterwards.
+	 */
+	void write() {
+		if (pendingEntities.isEmpty())
+			return;
+
+		long time = System.nanoTime();
+		Dao dao = OneDev.getInstance(Dao.class);
+		Session session = dao.getSession();
+		Integer jdbcBatchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(BATCH_SIZE);
+		try {
+			session.flush();
+			for (Map.Entry<Class<?>, List<AbstractEntity>> entry: pendingEntities.entrySet()) {
+				int count = 0;
+				for (AbstractEntity entity: entry.getValue()) {
+					dao.persist(entity);
+					if (++count % BATCH_SIZE == 0) {
+						session.flush();
+						session.clear();
+					}
+				}
+				session.flush();
+				session.clear();
+				counts.merge(entry.getKey().getSimpleName(), (long) count, Long::sum);
+			}
+		} finally {
+			session.setJdbcBatchSize(jdbcBatchSize);
+			pendingEntities.clear();
+		}
+		writeNanos += System.nanoTime() - time;
+	}
+
+	void addTo(ImportResult result) {
+		long total = 0;
+		for (Map.Entry<String, Long> entry: counts.entrySet()) {
+			result.statistics.put("Inserted " + entry.getKey() + " entities", String.valueOf(entry.getValue()));
+			total += entry.getValue();
+		}
+		if (total != 0 && writeNanos != 0)
+			result.statistics.put("Insert rate", (total * 1000000000L / writeNanos) + " entities/s");
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+/**
+ * Time budget of a text conversion. Conversion rules check it while scanning, regular
+ * expressions through the character sequence returned by {@link #guard(CharSequence)}, and
+ * abort with {@link BudgetExceededException} once the deadline has passed.
+ */
+class ConversionBudget {
+
+	static final ConversionBudget UNLIMITED = new ConversionBudget(0);
+
+	// check the clock once per this many characters read
+	private static final int CHECK_INTERVAL = 4096;
+
+	private final long deadline;
+
+	private final boolean limited;
+
+	/**
+	 * @param timeoutMillis
+	 * 			time budget, or <tt>0</tt> for no limit
+	 */
+	ConversionBudget(long timeoutMillis) {
+		limited = timeoutMillis > 0;
+		deadline = System.nanoTime() + timeoutMillis * 1000000L;
+	}
+
+	/**
+	 * @throws BudgetExceededException if the deadline has passed
+	 */
+	void check() {
+		if (limited && System.nanoTime() - deadline > 0)
+			throw new BudgetExceededException();
+	}
+
+	/**
+	 * Wraps given text so that reading it checks this budget, to bound regular expressions
+	 * which backtrack a lot.
+	 */
+	CharSequence guard(CharSequence text) {
+		if (!limited)
+			return text;
+		return new CharSequence() {
+
+			private int reads;
+
+			@Override
+			public char charAt(int index) {
+				if (++reads == CHECK_INTERVAL) {
+					reads = 0;
+					check();
+				}
+				return text.charAt(index);
+			}
+
+			@Override
+			public int length() {
+				return text.length();
+			}
+
+			@Override
+			public CharSequence subSequence(int start, int end) {
+				return text.subSequence(start, end);
+			}
+
+			@Override
+			public String toString() {
+				return text.toString();
+			}
+
+		};
+	}
+
+	static class BudgetExceededException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		BudgetExceededException() {
+			super("Text conversion exceeded its time budget", null, false, false);
+		}
+
+	}
+
+}
@@ -0,0 +1,209 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+/**
+ * Cache of Textile texts converted to Markdown, keyed by a hash of the text and of
+ * {@link RedmineTextileConverter#VERSION}, so that dry runs, real runs and incremental
+ * re-imports do not convert unchanged texts again. Recently used conversions are kept in
+ * memory for all imports, and on disk below the OneDev site directory if enabled. The disk
+ * tier is shared by all imports, and its directory is scanned at most once per
+ * {@link #PRUNE_INTERVAL} or when it gets too large, not each time an import starts.
+ */
+class ConversionCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConversionCache.class);
+
+	// characters of converted texts kept in memory
+	private static final long MAX_MEMORY_WEIGHT = 16 * 1024 * 1024;
+
+	private static final long PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+	private static final Cache<String, String> memory = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_MEMORY_WEIGHT)
+			.weigher((String key, String value) -> key.length() + value.length())
+			.build();
+
+	private static final Map<File, DiskTier> diskTiers = new HashMap<>();
+
+	@Nullable
+	private final DiskTier disk;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+
+	private final AtomicLong diskHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private ConversionCache(@Nullable DiskTier disk) {
+		this.disk = disk;
+	}
+
+	/**
+	 * Opens conversion cache, with a disk tier if enabled in given import option.
+	 */
+	static ConversionCache open(IssueImportOption importOption) {
+		if (importOption.getConversionCacheMaxSize() <= 0)
+			return new ConversionCache(null);
+
+		File dir = ImportUtils.getWorkDir("conversions");
+		long maxSize = importOption.getConversionCacheMaxSize() * 1024L * 1024L;
+		DiskTier disk;
+		synchronized (diskTiers) {
+			disk = diskTiers.computeIfAbsent(dir, DiskTier::new);
+		}
+		synchronized (disk) {
+			disk.maxSize = maxSize;
+			if (disk.size > maxSize || System.currentTimeMillis() - disk.pruneTime > PRUNE_INTERVAL)
+				disk.prune();
+		}
+		return new ConversionCache(disk);
+	}
+
+	static String getKey(String text) {
+		return Hashing.sha256().newHasher()
+				.putInt(RedmineTextileConverter.VERSION)
+				.putString(text, StandardCharsets.UTF_8)
+				.hash().toString();
+	}
+
+	@Nullable
+	String get(String key) {
+		String markdown = memory.getIfPresent(key);
+		if (markdown != null) {
+			memoryHits.incrementAndGet();
+			return markdown;
+		}
+
+		if (disk != null) {
+			markdown = disk.get(key);
+			if (markdown != null) {
+				memory.put(key, markdown);
+				diskHits.incrementAndGet();
+				return markdown;
+			}
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	void put(String key, String markdown) {
+		memory.put(key, markdown);
+		if (disk != null)
+			disk.put(key, markdown);
+	}
+
+	String getStatistics() {
+		long hits = memoryHits.get() + diskHits.get();
+		return hits + " hits (" + diskHits.get() + " from disk), " + misses.get() + " misses";
+	}
+
+	private static void delete(File file) {
+		if (file.exists() && !file.delete())
+			logger.warn("Unable to delete " + file);
+	}
+
+	private static class DiskTier {
+
+		private final File dir;
+
+		private long maxSize;
+
+		private long size;
+
+		private long pruneTime;
+
+		DiskTier(File dir) {
+			this.dir = dir;
+		}
+
+		@Nullable
+		String get(String key) {
+			File file = getFile(key);
+			if (!file.exists())
+				return null;
+			try {
+				String markdown = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+				file.setLastModified(System.currentTimeMillis());
+				return markdown;
+			} catch (IOException e) {
+				logger.warn("Ignoring unreadable cache entry " + file + ": " + e.getMessage());
+				delete(file);
+				return null;
+			}
+		}
+
+		void put(String key, String markdown) {
+			File file = getFile(key);
+			File tempFile = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+			try {
+				Files.write(tempFile.toPath(), markdown.getBytes(StandardCharsets.UTF_8));
+				long oldLength = file.length();
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				synchronized (this) {
+					size += file.length() - oldLength;
+					if (size > maxSize)
+						prune();
+				}
+			} catch (IOException e) {
+				logger.warn("Unable to write cache entry " + file + ": " + e.getMessage());
+				delete(tempFile);
+			}
+		}
+
+		private File getFile(String key) {
+			return new File(dir, key + ".md");
+		}
+
+		/**
+		 * Removes the least recently used entries if cache is too large.
+		 */
+		private synchronized void prune() {
+			pruneTime = System.currentTimeMillis();
+			File[] files = dir.listFiles((d, name) -> name.endsWith(".md"));
+			if (files == null)
+				return;
+
+			List<File> remaining = new ArrayList<>(Arrays.asList(files));
+			size = 0;
+			for (File file: remaining)
+				size += file.length();
+
+			if (size > maxSize) {
+				remaining.sort(Comparator.comparingLong(File::lastModified));
+				// prune to 90% of max size so that we do not prune again with each new entry
+				for (File file: remaining) {
+					if (size <= maxSize * 9 / 10)
+						break;
+					size -= file.length();
+					delete(file);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,359 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.onedev.commons.utils.TaskLogger;
+import io.onedev.server.OneDev;
+import io.onedev.server.entitymanager.IssueManager;
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.IssueComment;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.dao.Dao;
+
+/**
+ * Attachments of an issue import which are imported after the issues, in the background.
+ * Issues link to them on Redmine, and once their batch is committed, the attachments are
+ * recorded in a manifest (one json record per line). A background job then downloads them,
+ * stores them as issue attachments and rewrites the links in descriptions and comments,
+ * recording each completed issue in the manifest. An interrupted job resumes with the next import into the
+ * same project, and the manifest is deleted once all attachments are imported.
+ */
+class DeferredAttachmentImport implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeferredAttachmentImport.class);
+
+	private static final String ATTACHMENT = "attachment";
+
+	private static final String DONE = "done";
+
+	private static final int PROGRESS_INTERVAL = 100;
+
+	private static final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("redmine-import-deferred-attachments").setDaemon(true).build());
+
+	// manifests with a job queued or running, and manifests being written by an import,
+	// guarded by the class lock
+	private static final Set<File> jobs = new HashSet<>();
+
+	private static final Set<File> openManifests = new HashSet<>();
+
+	private final File file;
+
+	private final String redmineProjectId;
+
+	private DeferredAttachmentImport(File file, String redmineProjectId) {
+		this.file = file;
+		this.redmineProjectId = redmineProjectId;
+	}
+
+	/**
+	 * Opens manifest of given import. Attachments are appended to those not imported yet by
+	 * a previous import, and the manifest file is only created once attachments are added.
+	 */
+	static DeferredAttachmentImport open(ImportServer server, String redmineProjectId, Project oneDevProject) {
+		String key = Hashing.sha256().hashString(server.getApiUrl() + "\n" + redmineProjectId
+				+ "\n" + oneDevProject.getId(), StandardCharsets.UTF_8).toString();
+		File file = new File(ImportUtils.getWorkDir("deferred-attachments"), key + ".log");
+		synchronized (DeferredAttachmentImport.class) {
+			openManifests.add(file);
+		}
+		return new DeferredAttachmentImport(file, redmineProjectId);
+	}
+
+	static Entry entry(Project oneDevProject, long issueNumber, RedmineIssueDetail.Attachment attachment) {
+		Entry entry = new Entry(ATTACHMENT);
+		entry.projectId = oneDevProject.getId();
+		entry.issueNumber = issueNumber;
+		entry.attachmentId = attachment.id;
+		entry.filename = attachment.filename;
+		entry.filesize = attachment.filesize;
+		entry.digest = attachment.digest;
+		entry.contentUrl = attachment.contentUrl;
+		return entry;
+	}
+
+	/**
+	 * Adds given entries to the manifest and writes them to disk.
+	 */
+	void add(List<Entry> entries) {
+		append(file, entries);
+	}
+
+	/**
+	 * Appends given entries to given manifest and writes them to disk. Imports and jobs append
+	 * through this method only, so that their lines do not interleave.
+	 */
+	private static void append(File file, List<Entry> entries) {
+		if (entries.isEmpty())
+			return;
+		ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
+		synchronized (DeferredAttachmentImport.class) {
+			try (FileOutputStream os = new FileOutputStream(file, true);
+					Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+				for (Entry entry: entries) {
+					writer.write(mapper.writeValueAsString(entry));
+					writer.write('\n');
+				}
+				writer.flush();
+				os.getFD().sync();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Closes the manifest and starts importing its attachments in the background, including
+	 * those left by previous imports, unless a job is already importing them.
+	 */
+	void start(ImportServer server) {
+		close();
+		synchronized (DeferredAttachmentImport.class) {
+			if (!file.exists() || !jobs.add(file))
+				return;
+		}
+		jobExecutor.execute(() -> {
+			try {
+				run(server);
+			} catch (Exception e) {
+				logger.error("Error importing deferred Redmine attachments (manifest: " + file + ")", e);
+				synchronized (DeferredAttachmentImport.class) {
+					jobs.remove(file);
+				}
+			}
+		});
+	}
+
+	private void run(ImportServer server) throws IOException {
+		// failed attachments are retried by the job of next import
+		Set<Long> failedAttachmentIds = new HashSet<>();
+
+		// attachments added while a pass runs are imported by the next pass
+		while (true) {
+			List<List<Entry>> pendingIssues;
+			synchronized (DeferredAttachmentImport.class) {
+				pendingIssues = readPendingIssues(failedAttachmentIds);
+				if (pendingIssues.isEmpty()) {
+					// an import still writing the manifest starts a new job once done
+					if (failedAttachmentIds.isEmpty() && !openManifests.contains(file) && !file.delete())
+						logger.warn("Unable to delete " + file);
+					jobs.remove(file);
+					return;
+				}
+			}
+			importAttachments(server, pendingIssues, failedAttachmentIds);
+		}
+	}
+
+	/**
+	 * Reads attachments not imported yet from the manifest, grouped by issue in import order.
+	 * An attachment added again after it was imported, as by an incremental import updating
+	 * its issue, is imported again.
+	 */
+	private List<List<Entry>> readPendingIssues(Set<Long> failedAttachmentIds) throws IOException {
+		ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
+		Map<Long, Entry> pendingAttachments = new LinkedHashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Entry entry;
+				try {
+					entry = mapper.readValue(line, Entry.class);
+				} catch (IOException e) {
+					// incomplete if OneDev stopped while writing it
+					logger.warn("Ignoring unreadable line of " + file + ": " + e.getMessage());
+					continue;
+				}
+				if (entry.type.equals(DONE))
+					pendingAttachments.remove(entry.attachmentId);
+				else
+					pendingAttachments.put(entry.attachmentId, entry);
+			}
+		}
+
+		Map<String, List<Entry>> pendingIssues = new LinkedHashMap<>();
+		pendingAttachments.keySet().removeAll(failedAttachmentIds);
+		for (Entry entry: pendingAttachments.values())
+			pendingIssues.computeIfAbsent(entry.projectId + ":" + entry.issueNumber, k -> new ArrayList<>()).add(entry);
+		return new ArrayList<>(pendingIssues.values());
+	}
+
+	private void importAttachments(ImportServer server, List<List<Entry>> pendingIssues,
+			Set<Long> failedAttachmentIds) {
+		int total = 0;
+		for (List<Entry> entries: pendingIssues)
+			total += entries.size();
+		logger.info("Importing " + total + " deferred Redmine attachments (manifest: " + file + ")");
+
+		TaskLogger taskLogger = new TaskLogger() {
+
+			@Override
+			public void log(String message, String sessionId) {
+				logger.info(message);
+			}
+
+		};
+		int imported = 0;
+		try (
+				RedmineClient client = new RedmineClient(server);
+				AttachmentPipeline pipeline = new AttachmentPipeline(server, client, taskLogger)) {
+			// download attachments of a few issues ahead of the one being stored
+			int window = Math.max(1, server.getAttachmentConcurrency()) * 4;
+			Deque<List<CompletableFuture<File>>> downloads = new ArrayDeque<>();
+			for (int next = 0, current = 0; current < pendingIssues.size(); current++) {
+				for (; next < pendingIssues.size() && next < current + window; next++) {
+					List<CompletableFuture<File>> issueDownloads = new ArrayList<>();
+					for (Entry entry: pendingIssues.get(next))
+						issueDownloads.add(pipeline.download(entry.toAttachment()));
+					downloads.add(issueDownloads);
+				}
+
+				List<Entry> entries = pendingIssues.get(current);
+				List<File> files = new ArrayList<>();
+				Map<Long, String> attachmentNames;
+				try {
+					for (CompletableFuture<File> download: downloads.remove())
+						files.add(AttachmentPipeline.await(download));
+					attachmentNames = store(entries, files);
+				} catch (RuntimeException e) {
+					logger.warn("Error importing deferred attachments of issue #" + entries.get(0).issueNumber
+							+ ", will retry with next import: " + e.getMessage());
+					entries.forEach(it -> failedAttachmentIds.add(it.attachmentId));
+					continue;
+				} finally {
+					files.forEach(pipeline::release);
+				}
+
+				List<Entry> doneEntries = new ArrayList<>();
+				for (Entry entry: entries) {
+					Entry done = new Entry(DONE);
+					done.attachmentId = entry.attachmentId;
+					doneEntries.add(done);
+				}
+				append(file, doneEntries);
+
+				// so that an incremental import updating the issue does not store them again
+				if (!attachmentNames.isEmpty())
+					ImportCheckpoint.addAttachments(server, redmineProjectId, entries.get(0).projectId, attachmentNames);
+
+				int before = imported;
+				imported += entries.size();
+				if (imported / PROGRESS_INTERVAL != before / PROGRESS_INTERVAL || imported == total)
+					logger.info("Imported " + imported + " of " + total + " deferred Redmine attachments");
+			}
+		}
+	}
+
+	/**
+	 * Stores given downloaded attachments of an issue and links them from its description and comments.
+	 *
+	 * @return names of the stored attachments by Redmine attachment ID, empty if the issue does not exist
+	 */
+	private static Map<Long, String> store(List<Entry> entries, List<File> files) {
+		return OneDev.getInstance(SessionManager.class).call(() -> OneDev.getInstance(TransactionManager.class).call(() -> {
+			Map<Long, String> attachmentNames = new HashMap<>();
+			Project project = OneDev.getInstance(Dao.class).get(Project.class, entries.get(0).projectId);
+			Issue issue = (project != null)
+					? OneDev.getInstance(IssueManager.class).find(project, entries.get(0).issueNumber)
+					: null;
+			if (issue == null) {
+				// issue was deleted meanwhile
+				return attachmentNames;
+			}
+
+			AttachmentLinkRewriter rewriter = new AttachmentLinkRewriter();
+			for (int i = 0; i < entries.size(); i++) {
+				Entry entry = entries.get(i);
+				String attachmentName;
+				try (InputStream is = new FileInputStream(files.get(i))) {
+					attachmentName = project.saveAttachment(issue.getUUID(), entry.filename, is);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				rewriter.add(entry.contentUrl, project.getAttachmentUrlPath(issue.getUUID(), attachmentName));
+				attachmentNames.put(entry.attachmentId, attachmentName);
+			}
+			issue.setDescription(rewriter.rewrite(issue.getDescription()));
+			for (IssueComment comment: issue.getComments())
+				comment.setContent(rewriter.rewrite(comment.getContent()));
+			return attachmentNames;
+		}));
+	}
+
+	@Override
+	public void close() {
+		synchronized (DeferredAttachmentImport.class) {
+			openManifests.remove(file);
+		}
+	}
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	static class Entry {
+
+		public String type;
+
+		public Long projectId;
+
+		public Long issueNumber;
+
+		public long attachmentId;
+
+		public String filename;
+
+		public long filesize;
+
+		public String digest;
+
+		public String contentUrl;
+
+		public Entry() {
+		}
+
+		Entry(String type) {
+			this.type = type;
+		}
+
+		RedmineIssueDetail.Attachment toAttachment() {
+			RedmineIssueDetail.Attachment attachment = new RedmineIssueDetail.Attachment();
+			attachment.id = attachmentId;
+			attachment.filename = filename;
+			attachment.filesize = filesize;
+			attachment.digest = digest;
+			attachment.contentUrl = contentUrl;
+			return attachment;
+		}
+
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+
+import io.onedev.server.OneDev;
+import io.onedev.server.model.Project;
+
+/**
+ * Synchronization state of a Redmine project imported into a OneDev project, used by
+ * incremental imports to only fetch issues updated since the previous import.
+ */
+class ImportCheckpoint {
+
+	/**
+	 * Time of Redmine when the previous import started listing issues. Issues updated since,
+	 * including those updated while the previous import was running, are imported again.
+	 */
+	public String lastUpdatedOn;
+
+	/**
+	 * Redmine ids of imported journals created at or after {@link #lastUpdatedOn}, which are
+	 * not added again when their issue is updated.
+	 */
+	public Set<Long> journalIds = new HashSet<>();
+
+	/**
+	 * Maps Redmine issue ids to OneDev issue numbers.
+	 */
+	public Map<Long, Long> issueNumbers = new HashMap<>();
+
+	/**
+	 * Maps Redmine attachment ids to names of the attachments stored with their OneDev issue,
+	 * so that they are not stored again when the issue is updated.
+	 */
+	public Map<Long, String> attachmentNames = new HashMap<>();
+
+	@Nullable
+	static ImportCheckpoint load(ImportServer server, String redmineProjectId, Project oneDevProject) {
+		return load(getFile(server, redmineProjectId, oneDevProject.getId()));
+	}
+
+	@Nullable
+	private static ImportCheckpoint load(File file) {
+		if (!file.exists())
+			return null;
+		try {
+			return OneDev.getInstance(ObjectMapper.class).readValue(file, ImportCheckpoint.class);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Saves this checkpoint, keeping attachments recorded meanwhile by the background import
+	 * of attachments.
+	 */
+	void save(ImportServer server, String redmineProjectId, Project oneDevProject) {
+		File file = getFile(server, redmineProjectId, oneDevProject.getId());
+		synchronized (ImportCheckpoint.class) {
+			ImportCheckpoint current = load(file);
+			if (current != null)
+				current.attachmentNames.forEach(attachmentNames::putIfAbsent);
+			write(file);
+		}
+	}
+
+	/**
+	 * Records given attachments, stored after the import which saved the checkpoint. Nothing is
+	 * recorded if there is no checkpoint.
+	 */
+	static void addAttachments(ImportServer server, String redmineProjectId, Long oneDevProjectId,
+			Map<Long, String> attachmentNames) {
+		File file = getFile(server, redmineProjectId, oneDevProjectId);
+		synchronized (ImportCheckpoint.class) {
+			ImportCheckpoint checkpoint = load(file);
+			if (checkpoint != null) {
+				checkpoint.attachmentNames.putAll(attachmentNames);
+				checkpoint.write(file);
+			}
+		}
+	}
+
+	private void write(File file) {
+		File tempFile = new File(file.getPath() + ".tmp");
+		try {
+			OneDev.getInstance(ObjectMapper.class).writeValue(tempFile, this);
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static File getFile(ImportServer server, String redmineProjectId, Long oneDevProjectId) {
+		String key = Hashing.sha256().hashString(server.getApiUrl() + "\n" + redmineProjectId
+				+ "\n" + oneDevProjectId, StandardCharsets.UTF_8).toString();
+		return new File(ImportUtils.getWorkDir("checkpoints"), key + ".json");
+	}
+
+}
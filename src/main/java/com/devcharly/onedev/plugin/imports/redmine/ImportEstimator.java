@@ -0,0 +1,200 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import static com.devcharly.onedev.plugin.imports.redmine.ImportUtils.PER_PAGE;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.onedev.commons.utils.TaskLogger;
+import io.onedev.server.OneDev;
+import io.onedev.server.entitymanager.SettingManager;
+import io.onedev.server.model.Project;
+
+/**
+ * Estimates the cost of an issue import without importing anything: issue and user totals are
+ * read from the first page of their lists (users are only listed for administrators, others
+ * are resolved one by one as by the import), and details of a sample of issues, taken from pages
+ * spread over the issue list, are fetched and converted as by a real import. Request count,
+ * attachment bytes, journal volume and duration at the configured concurrency are then
+ * extrapolated from the sample.
+ */
+class ImportEstimator {
+
+	// requests listing versions, statuses, trackers, priorities, categories and custom fields,
+	// getting the current user and the time of Redmine
+	private static final int METADATA_REQUESTS = 8;
+
+	static ImportResult estimate(ImportServer server, String redmineProject, Project oneDevProject,
+			IssueImportOption importOption, TaskLogger logger) {
+		RedmineClient client = new RedmineClient(server);
+		TextConversionStage conversionStage = new TextConversionStage(importOption, client.getMetrics());
+		IssueDetailFetcher detailFetcher = new IssueDetailFetcher(server, client, server.getDetailConcurrency(),
+				conversionStage, logger);
+		try {
+			String redmineProjectId = ImportUtils.getRedmineProjectId(redmineProject);
+			ImportCheckpoint checkpoint = importOption.isIncremental()
+					? ImportCheckpoint.load(server, redmineProjectId, oneDevProject)
+					: null;
+			URI issuesUri = URI.create(ImportUtils.getIssuesApiEndpoint(server, redmineProjectId,
+					(checkpoint != null) ? checkpoint.lastUpdatedOn : null,
+					ImportUtils.parseImportIssueIDs(importOption.getImportIssueIDs())));
+
+			logger.log("Estimating import of issues from project " + redmineProject + "...");
+
+			// first pages hold the total counts
+			boolean admin = ImportUtils.isAdmin(client, server, logger);
+			int userCount = 0;
+			if (admin) {
+				JsonNode firstUsersPage = ImportUtils.getPage(client,
+						URI.create(server.getApiEndpoint("/users.json?status=")), 0, logger);
+				userCount = getTotalCount(firstUsersPage, ImportUtils.getPageData(firstUsersPage, "users"));
+			}
+
+			long listStartTime = System.nanoTime();
+			JsonNode firstPage = ImportUtils.getPage(client, issuesUri, 0, logger);
+			List<JsonNode> issueNodes = ImportUtils.getPageData(firstPage, "issues");
+			int issueCount = getTotalCount(firstPage, issueNodes);
+
+			int pageCount = (issueCount + PER_PAGE - 1) / PER_PAGE;
+			int sampleSize = (int) Math.min(issueCount,
+					Math.max(1, Math.ceil(issueCount * importOption.getEstimateSamplePercent() / 100.0)));
+
+			// read pages spread over the issue list, so that old and recent issues are sampled
+			int samplePageCount = Math.min(pageCount, (sampleSize + PER_PAGE - 1) / PER_PAGE);
+			int readPageCount = 1;
+			for (int i = 1; i < samplePageCount; i++) {
+				int offset = (int) ((long) i * pageCount / samplePageCount) * PER_PAGE;
+				issueNodes.addAll(ImportUtils.getPageData(ImportUtils.getPage(client, issuesUri, offset, logger), "issues"));
+				readPageCount++;
+			}
+			long listMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - listStartTime);
+
+			List<JsonNode> sampleNodes = new ArrayList<>();
+			sampleSize = Math.min(sampleSize, issueNodes.size());
+			for (int i = 0; i < sampleSize; i++)
+				sampleNodes.add(issueNodes.get((int) ((long) i * issueNodes.size() / sampleSize)));
+
+			logger.log("Fetching details of " + sampleSize + " of " + issueCount + " issues...");
+			long maxUploadFileSize = OneDev.getInstance(SettingManager.class)
+					.getPerformanceSetting().getMaxUploadFileSize()*1L*1024*1024;
+			long detailStartTime = System.nanoTime();
+			long journalCount = 0;
+			long notesLength = 0;
+			long descriptionLength = 0;
+			long attachmentCount = 0;
+			long attachmentBytes = 0;
+			long tooLargeAttachmentCount = 0;
+			Set<String> sampleUserIds = new HashSet<>();
+			detailFetcher.prefetch(sampleNodes);
+			for (JsonNode issueNode: sampleNodes) {
+				RedmineIssueDetail detail = detailFetcher.get(issueNode.get("id").asLong());
+				for (String field: new String[] {"author", "assigned_to"}) {
+					if (issueNode.hasNonNull(field))
+						sampleUserIds.add(issueNode.get(field).get("id").asText());
+				}
+				for (RedmineIssueDetail.Watcher watcher: detail.watchers)
+					sampleUserIds.add(watcher.id);
+				if (detail.convertedDescription != null)
+					descriptionLength += detail.convertedDescription.length();
+				journalCount += detail.journals.size();
+				for (RedmineIssueDetail.Journal journal: detail.journals) {
+					notesLength += journal.convertedNotes.length();
+					sampleUserIds.add(journal.userId);
+				}
+				for (RedmineIssueDetail.Attachment attachment: detail.attachments) {
+					if (attachment.filesize > maxUploadFileSize) {
+						tooLargeAttachmentCount++;
+					} else if (attachment.filesize != 0) {
+						attachmentCount++;
+						attachmentBytes += attachment.filesize;
+					}
+				}
+			}
+			long detailMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - detailStartTime);
+
+			double factor = sampleSize != 0 ? (double) issueCount / sampleSize : 0;
+			// without user list, each user is requested once, users of the sample being a lower bound
+			long userRequestCount = admin ? (userCount + PER_PAGE - 1) / PER_PAGE : sampleUserIds.size();
+			long estimatedAttachments = Math.round(attachmentCount * factor);
+			long estimatedAttachmentBytes = Math.round(attachmentBytes * factor);
+			long estimatedRequests = METADATA_REQUESTS + userRequestCount + pageCount + issueCount + estimatedAttachments;
+
+			// list pages were read one after another, and sampled details with at most the configured
+			// number of requests in flight, as by the import
+			long listDurationMillis = readPageCount != 0
+					? listMillis / readPageCount * pageCount / Math.max(1, server.getListConcurrency())
+					: 0;
+			int detailConcurrency = Math.max(1, server.getDetailConcurrency());
+			long detailDurationMillis = sampleSize != 0
+					? Math.round((double) detailMillis * Math.min(detailConcurrency, sampleSize) / sampleSize
+							* issueCount / detailConcurrency)
+					: 0;
+			Long attachmentDurationMillis = server.getAttachmentBandwidth() > 0
+					? estimatedAttachmentBytes * 1000 / (server.getAttachmentBandwidth() * 1024L)
+					: null;
+
+			ImportResult result = new ImportResult();
+			result.statistics.put("Issues to import", String.valueOf(issueCount));
+			result.statistics.put("Sampled issues", String.valueOf(sampleSize));
+			result.statistics.put("Estimated Redmine requests", String.valueOf(estimatedRequests));
+			result.statistics.put("Estimated journals", String.valueOf(Math.round(journalCount * factor)));
+			result.statistics.put("Estimated text of descriptions and comments",
+					FileUtils.byteCountToDisplaySize(Math.round((descriptionLength + notesLength) * factor)));
+			result.statistics.put("Estimated attachments", String.valueOf(estimatedAttachments));
+			result.statistics.put("Estimated attachment download", FileUtils.byteCountToDisplaySize(estimatedAttachmentBytes));
+			if (tooLargeAttachmentCount != 0) {
+				result.statistics.put("Estimated too large attachments",
+						String.valueOf(Math.round(tooLargeAttachmentCount * factor)));
+			}
+			result.statistics.put("Estimated issue list duration", formatDuration(listDurationMillis));
+			result.statistics.put("Estimated issue details duration", formatDuration(detailDurationMillis));
+			result.statistics.put("Estimated attachment download duration", attachmentDurationMillis != null
+					? formatDuration(attachmentDurationMillis)
+					: "unknown without bandwidth limit");
+
+			// issue details are fetched while pages are listed, and attachments downloaded meanwhile
+			long durationMillis = Math.max(listDurationMillis, detailDurationMillis);
+			if (attachmentDurationMillis != null && !importOption.isDeferAttachments())
+				durationMillis = Math.max(durationMillis, attachmentDurationMillis);
+			result.statistics.put("Estimated duration, without saving issues", formatDuration(durationMillis));
+			result.notes.add("Nothing was imported. Estimates are extrapolated from details of " + sampleSize
+					+ " issues, with " + detailConcurrency + " parallel issue requests");
+			if (!admin) {
+				result.notes.add("Redmine users are only listed for administrators. User requests are estimated "
+						+ "from the users of sampled issues, and may be more");
+			}
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			detailFetcher.close();
+			conversionStage.close();
+			client.close();
+		}
+	}
+
+	private static int getTotalCount(JsonNode resultNode, List<JsonNode> firstPageData) {
+		JsonNode totalCountNode = resultNode.get("total_count");
+		return totalCountNode != null ? totalCountNode.asInt() : firstPageData.size();
+	}
+
+	private static String formatDuration(long millis) {
+		long minutes = TimeUnit.MILLISECONDS.toMinutes(millis);
+		if (minutes >= 60)
+			return (minutes / 60) + " h " + (minutes % 60) + " min";
+		else if (minutes != 0)
+			return minutes + " min";
+		else
+			return TimeUnit.MILLISECONDS.toSeconds(millis) + " s";
+	}
+
+}
@@ -0,0 +1,370 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+
+import io.onedev.server.OneDev;
+import io.onedev.server.model.Project;
+
+/**
+ * Write-ahead progress journal of an issue import, stored as one json record per line. It
+ * records the issues saved so far, the attachments downloaded so far and the cross-issue work
+ * left for the end of the import (links, link changes, reference migration) together with
+ * the progress of that final pass, so that an interrupted import can be resumed from the last
+ * committed batch.
+ * <p>
+ * Records of a batch are written before the batch is committed to the database, and are
+ * followed by a commit record afterwards. If OneDev stopped in between, the batch is kept
+ * only if its first new issue exists in the database when the journal is read again. Saved
+ * attachments do not depend on database transactions and are always kept.
+ * <p>
+ * A dry run keeps the journal in memory only.
+ */
+class ImportJournal implements AutoCloseable {
+
+	static final String ISSUE = "issue";
+	static final String ATTACHMENT = "attachment";
+	static final String RELATION = "relation";
+	static final String PARENT = "parent";
+	static final String LINK_CHANGE = "linkChange";
+	static final String MIGRATE_ISSUE = "migrateIssue";
+	static final String MIGRATE_COMMENT = "migrateComment";
+	static final String PROGRESS = "progress";
+	static final String COMMIT = "commit";
+
+	@Nullable
+	private final File file;
+
+	@Nullable
+	private FileOutputStream os;
+
+	@Nullable
+	private Writer writer;
+
+	private boolean resumed;
+
+	/**
+	 * Numbers of saved issues by Redmine issue ID.
+	 */
+	final LongLongMap issueNumbers = new LongLongMap();
+
+	/**
+	 * OneDev IDs of saved issues by Redmine issue ID, not known for dry runs.
+	 */
+	private final LongLongMap issueIds = new LongLongMap();
+
+	/**
+	 * Redmine IDs of saved issues which were imported by a previous import and updated.
+	 */
+	private final BitSet updatedIssues = new BitSet();
+
+	/**
+	 * Downloaded attachments by Redmine issue ID.
+	 */
+	final Map<Long, List<Record>> attachments = new HashMap<>();
+
+	final RelationTable relations = new RelationTable();
+
+	/**
+	 * Redmine parent issue IDs by child issue ID.
+	 */
+	final LongLongMap parents = new LongLongMap();
+
+	final List<Record> linkChanges = new ArrayList<>();
+
+	final List<Long> issuesToMigrate = new ArrayList<>();
+
+	final List<Long> commentsToMigrate = new ArrayList<>();
+
+	/**
+	 * Number of processed entries by phase of the final pass.
+	 */
+	private final Map<String, Integer> progress = new HashMap<>();
+
+	private ImportJournal(@Nullable File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Opens journal of given import.
+	 *
+	 * @param resume
+	 * 			whether to continue an interrupted import. If <tt>false</tt>, an existing journal is discarded
+	 * @param issueExists
+	 * 			checks whether an issue of given OneDev issue ID exists, used to find out whether
+	 * 			the last batch of an interrupted import was committed
+	 */
+	static ImportJournal open(ImportServer server, String redmineProjectId, Project oneDevProject,
+			boolean resume, boolean dryRun, Predicate<Long> issueExists) {
+		if (dryRun)
+			return new ImportJournal(null);
+
+		String key = Hashing.sha256().hashString(server.getApiUrl() + "\n" + redmineProjectId
+				+ "\n" + oneDevProject.getId(), StandardCharsets.UTF_8).toString();
+		ImportJournal journal = new ImportJournal(new File(ImportUtils.getWorkDir("journals"), key + ".log"));
+		try {
+			if (resume && journal.file.exists()) {
+				journal.replay(issueExists);
+				journal.resumed = true;
+			}
+			journal.os = new FileOutputStream(journal.file, journal.resumed);
+			journal.writer = new OutputStreamWriter(journal.os, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return journal;
+	}
+
+	boolean isResumed() {
+		return resumed;
+	}
+
+	boolean hasIssue(long redmineId) {
+		return issueNumbers.containsKey(redmineId);
+	}
+
+	int getIssueCount() {
+		return issueNumbers.size();
+	}
+
+	/**
+	 * Gets OneDev ID of given saved issue, or <tt>0</tt> for issues of a dry run.
+	 */
+	long getIssueId(long redmineId) {
+		return issueIds.get(redmineId, 0);
+	}
+
+	boolean isUpdatedIssue(long redmineId) {
+		return updatedIssues.get(Math.toIntExact(redmineId));
+	}
+
+	int getProgress(String phase) {
+		return progress.getOrDefault(phase, 0);
+	}
+
+	private void replay(Predicate<Long> issueExists) throws IOException {
+		ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
+		List<Record> batch = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Record record;
+				try {
+					record = mapper.readValue(line, Record.class);
+				} catch (IOException e) {
+					// last line is incomplete if OneDev stopped while writing it
+					break;
+				}
+				if (record.type.equals(COMMIT)) {
+					batch.forEach(this::apply);
+					batch.clear();
+				} else if (record.type.equals(ATTACHMENT)) {
+					// attachments are saved independently of database transactions
+					apply(record);
+				} else {
+					batch.add(record);
+				}
+			}
+		}
+
+		// issues updated by an incremental import exist anyway
+		Record firstIssue = batch.stream()
+				.filter(it -> it.type.equals(ISSUE) && it.updated == null)
+				.findFirst().orElse(null);
+		if (firstIssue != null && issueExists.test(firstIssue.id))
+			batch.forEach(this::apply);
+	}
+
+	private void apply(Record record) {
+		switch (record.type) {
+		case ISSUE:
+			issueNumbers.put(record.redmineId, record.number);
+			if (record.id != null)
+				issueIds.put(record.redmineId, record.id);
+			if (record.updated != null)
+				updatedIssues.set(Math.toIntExact(record.redmineId));
+			break;
+		case ATTACHMENT: attachments.computeIfAbsent(record.redmineId, k -> new ArrayList<>()).add(record); break;
+		case RELATION: relations.add(record.id, record.from, record.to, record.name); break;
+		case PARENT: parents.put(record.from, record.to); break;
+		case LINK_CHANGE: linkChanges.add(record); break;
+		case MIGRATE_ISSUE: issuesToMigrate.add(record.id); break;
+		case MIGRATE_COMMENT: commentsToMigrate.add(record.id); break;
+		case PROGRESS: progress.put(record.name, record.number.intValue()); break;
+		}
+	}
+
+	/**
+	 * Adds given records. They are not durable before {@link #sync()} or {@link #commit()} is called.
+	 */
+	synchronized void add(List<Record> records) {
+		ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
+		for (Record record: records) {
+			apply(record);
+			if (writer != null) {
+				try {
+					writer.write(mapper.writeValueAsString(record));
+					writer.write('\n');
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes all added records to disk.
+	 */
+	synchronized void sync() {
+		if (writer != null) {
+			try {
+				writer.flush();
+				os.getFD().sync();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Marks all added records as committed to the database.
+	 */
+	synchronized void commit() {
+		add(Collections.singletonList(new Record(COMMIT)));
+		sync();
+	}
+
+	/**
+	 * Discards the journal after the import completed.
+	 */
+	void finish() {
+		close();
+		if (file != null && file.exists() && !file.delete())
+			throw new RuntimeException("Unable to delete " + file);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			writer = null;
+		}
+	}
+
+	static Record issue(long redmineId, long number, @Nullable Long id, boolean updated) {
+		Record record = new Record(ISSUE);
+		record.redmineId = redmineId;
+		record.number = number;
+		record.id = id;
+		if (updated)
+			record.updated = true;
+		return record;
+	}
+
+	static Record attachment(long redmineId, long attachmentId, String uuid, String name) {
+		Record record = new Record(ATTACHMENT);
+		record.redmineId = redmineId;
+		record.id = attachmentId;
+		record.uuid = uuid;
+		record.name = name;
+		return record;
+	}
+
+	static Record relation(long relationId, long issueId, long issueToId, String relationType) {
+		Record record = new Record(RELATION);
+		record.id = relationId;
+		record.from = issueId;
+		record.to = issueToId;
+		record.name = relationType;
+		return record;
+	}
+
+	static Record parent(long childId, long parentId) {
+		Record record = new Record(PARENT);
+		record.from = childId;
+		record.to = parentId;
+		return record;
+	}
+
+	static Record linkChange(long changeId, String linkName, @Nullable Long oldIssueId, @Nullable Long newIssueId) {
+		Record record = new Record(LINK_CHANGE);
+		record.id = changeId;
+		record.name = linkName;
+		record.from = oldIssueId;
+		record.to = newIssueId;
+		return record;
+	}
+
+	static Record migrateIssue(long issueId) {
+		Record record = new Record(MIGRATE_ISSUE);
+		record.id = issueId;
+		return record;
+	}
+
+	static Record migrateComment(long commentId) {
+		Record record = new Record(MIGRATE_COMMENT);
+		record.id = commentId;
+		return record;
+	}
+
+	static Record progress(String phase, int count) {
+		Record record = new Record(PROGRESS);
+		record.name = phase;
+		record.number = (long) count;
+		return record;
+	}
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	static class Record {
+
+		public String type;
+
+		public Long redmineId;
+
+		public Long number;
+
+		public Long id;
+
+		public Boolean updated;
+
+		public Long from;
+
+		public Long to;
+
+		public String name;
+
+		public String uuid;
+
+		public Record() {
+		}
+
+		Record(String type) {
+			this.type = type;
+		}
+
+	}
+
+}
@@ -0,0 +1,257 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.onedev.server.OneDev;
+
+/**
+ * Counters and latency histograms of the phases of an import, recorded from any thread. Phases
+ * run concurrently (issue details are fetched while pages are listed, attachments downloaded
+ * while issues are mapped), so their times add up to more than the import duration. A summary
+ * is added to the {@link ImportResult}, and the full report is written as json below the OneDev
+ * site directory.
+ */
+class ImportMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImportMetrics.class);
+
+	static final String HTTP = "HTTP requests";
+
+	static final String METADATA = "Metadata fetch";
+
+	static final String LIST = "List paging";
+
+	static final String DETAILS = "Issue details";
+
+	static final String USERS = "User resolution";
+
+	static final String CONVERSION = "Textile conversion";
+
+	static final String ATTACHMENTS = "Attachment download";
+
+	static final String PERSISTENCE = "Database persistence";
+
+	private static final int MAX_REPORTS = 100;
+
+	private final long startTime = System.currentTimeMillis();
+
+	// not modified once constructed, so that phases can be looked up from any thread
+	private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+	ImportMetrics() {
+		for (String name: new String[] {HTTP, METADATA, LIST, DETAILS, USERS, CONVERSION, ATTACHMENTS, PERSISTENCE})
+			phases.put(name, new Phase());
+	}
+
+	Phase get(String phase) {
+		return phases.get(phase);
+	}
+
+	/**
+	 * Calls given work and records its duration in given phase.
+	 */
+	<T> T time(String phase, Supplier<T> work) {
+		long start = System.nanoTime();
+		try {
+			return work.get();
+		} finally {
+			get(phase).record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Summary of given phases, for the task log.
+	 */
+	String getSummary(String... phaseNames) {
+		StringBuilder summary = new StringBuilder();
+		for (String name: phaseNames) {
+			Phase phase = get(name);
+			if (phase.count.get() != 0) {
+				if (summary.length() != 0)
+					summary.append("; ");
+				summary.append(name).append(": ").append(phase.getSummary());
+			}
+		}
+		return summary.toString();
+	}
+
+	void addTo(ImportResult result) {
+		for (Map.Entry<String, Phase> entry: phases.entrySet()) {
+			if (entry.getValue().count.get() != 0)
+				result.statistics.put(entry.getKey(), entry.getValue().getSummary());
+		}
+	}
+
+	/**
+	 * Writes the full report of given import, with the statistics of its result.
+	 *
+	 * @return the report file
+	 */
+	File write(String importName, ImportResult result) {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("import", importName);
+		report.put("startedAt", new Date(startTime));
+		report.put("durationMillis", System.currentTimeMillis() - startTime);
+		Map<String, Object> phaseReports = new LinkedHashMap<>();
+		phases.forEach((name, phase) -> phaseReports.put(name, phase.toReport()));
+		report.put("phases", phaseReports);
+		report.put("statistics", result.statistics);
+
+		File dir = ImportUtils.getWorkDir("reports");
+		File file = new File(dir, new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(startTime)) + ".json");
+		try {
+			OneDev.getInstance(ObjectMapper.class).writerWithDefaultPrettyPrinter().writeValue(file, report);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		// keep the most recent reports only
+		File[] reports = dir.listFiles((d, name) -> name.endsWith(".json"));
+		if (reports != null && reports.length > MAX_REPORTS) {
+			Arrays.sort(reports, Comparator.comparing(File::getName));
+			for (int i = 0; i < reports.length - MAX_REPORTS; i++) {
+				if (!reports[i].delete())
+					logger.warn("Unable to delete " + reports[i]);
+			}
+		}
+		return file;
+	}
+
+	private static String formatMicros(long micros) {
+		if (micros < 10_000)
+			return String.format("%.1f ms", micros / 1000.0);
+		else if (micros < 10_000_000)
+			return (micros / 1000) + " ms";
+		else
+			return String.format("%.1f s", micros / 1_000_000.0);
+	}
+
+	/**
+	 * Operation count, total time, transferred bytes and latency histogram of a phase. Latencies
+	 * are counted in buckets at most 25% wide, so percentiles are approximated within 25%.
+	 */
+	static class Phase {
+
+		private static final int BUCKETS = 160;
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong totalNanos = new AtomicLong();
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		private final AtomicLong bytes = new AtomicLong();
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		long getBytes() {
+			return bytes.get();
+		}
+
+		void record(long nanos) {
+			record(nanos, 0);
+		}
+
+		void record(long nanos, long bytes) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+			if (bytes > 0)
+				this.bytes.addAndGet(bytes);
+			buckets.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+		}
+
+		/**
+		 * Bucket of given latency: values below 4 have their own bucket, larger values are split
+		 * in 4 buckets per power of 2.
+		 */
+		private static int getBucket(long micros) {
+			if (micros < 4)
+				return (int) Math.max(0, micros);
+			int msb = 63 - Long.numberOfLeadingZeros(micros);
+			int bucket = (msb - 1) * 4 + (int) ((micros >>> (msb - 2)) & 3);
+			return Math.min(bucket, BUCKETS - 1);
+		}
+
+		private static long getBucketUpperBound(int bucket) {
+			if (bucket < 4)
+				return bucket;
+			int msb = bucket / 4 + 1;
+			long lower = (4L + bucket % 4) << (msb - 2);
+			return lower + (1L << (msb - 2)) - 1;
+		}
+
+		/**
+		 * Approximate latency in microseconds below which given fraction of operations completed.
+		 */
+		long getPercentileMicros(double fraction) {
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++)
+				total += buckets.get(i);
+			long target = (long) Math.ceil(total * fraction);
+			long maxMicros = TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+			long cumulated = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				cumulated += buckets.get(i);
+				if (cumulated >= target && cumulated != 0)
+					return Math.min(getBucketUpperBound(i), maxMicros);
+			}
+			return maxMicros;
+		}
+
+		String getSummary() {
+			StringBuilder summary = new StringBuilder();
+			summary.append(formatMicros(TimeUnit.NANOSECONDS.toMicros(totalNanos.get())))
+					.append(" for ").append(count.get()).append(count.get() == 1 ? " operation" : " operations");
+			if (count.get() > 1) {
+				summary.append(" (p50 ").append(formatMicros(getPercentileMicros(0.5)))
+						.append(", p90 ").append(formatMicros(getPercentileMicros(0.9)))
+						.append(", p99 ").append(formatMicros(getPercentileMicros(0.99)))
+						.append(", max ").append(formatMicros(TimeUnit.NANOSECONDS.toMicros(maxNanos.get())))
+						.append(")");
+			}
+			if (bytes.get() != 0)
+				summary.append(", ").append(FileUtils.byteCountToDisplaySize(bytes.get()));
+			return summary.toString();
+		}
+
+		Map<String, Object> toReport() {
+			Map<String, Object> report = new LinkedHashMap<>();
+			report.put("count", count.get());
+			report.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(totalNanos.get()));
+			report.put("bytes", bytes.get());
+			report.put("p50Micros", getPercentileMicros(0.5));
+			report.put("p90Micros", getPercentileMicros(0.9));
+			report.put("p99Micros", getPercentileMicros(0.99));
+			report.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+
+			// counts by upper bound of bucket, in microseconds
+			Map<String, Long> histogram = new LinkedHashMap<>();
+			for (int i = 0; i < BUCKETS; i++) {
+				if (buckets.get(i) != 0)
+					histogram.put(String.valueOf(getBucketUpperBound(i)), buckets.get(i));
+			}
+			report.put("histogram", histogram);
+			return report;
+		}
+
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.IssueComment;
+import io.onedev.server.model.Project;
+
+/**
+ * MBean registered for the duration of an issue import, so that progress and pressure of a
+ * long running import (rates, in-flight requests, queue depths of the stages and memory held
+ * by issues waiting to be saved) can be watched with any JMX client. Registered as
+ * <tt>com.devcharly.onedev.plugin.imports.redmine:type=Import,name=...</tt>.
+ */
+class ImportMonitor implements ImportMonitorMBean, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImportMonitor.class);
+
+	private static final String DOMAIN = "com.devcharly.onedev.plugin.imports.redmine";
+
+	// rough heap size of an entity without its texts, including its Hibernate bookkeeping
+	private static final int ENTITY_OVERHEAD = 256;
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private final String redmineProject;
+
+	private final String oneDevProject;
+
+	private final RedmineClient client;
+
+	private final IssueDetailFetcher detailFetcher;
+
+	private final TextConversionStage conversionStage;
+
+	private final AttachmentPipeline attachmentPipeline;
+
+	private final long startTime = System.nanoTime();
+
+	private final AtomicLong issueCount = new AtomicLong();
+
+	private final AtomicLong journalCount = new AtomicLong();
+
+	private volatile int pendingEntities;
+
+	private volatile long pendingEntitiesHeapEstimate;
+
+	@Nullable
+	private ObjectName objectName;
+
+	ImportMonitor(String redmineProject, Project oneDevProject, RedmineClient client,
+			IssueDetailFetcher detailFetcher, TextConversionStage conversionStage,
+			AttachmentPipeline attachmentPipeline) {
+		this.redmineProject = redmineProject;
+		this.oneDevProject = oneDevProject.getPath();
+		this.client = client;
+		this.detailFetcher = detailFetcher;
+		this.conversionStage = conversionStage;
+		this.attachmentPipeline = attachmentPipeline;
+	}
+
+	/**
+	 * Registers this monitor, unless JMX is not available. Imports run without it then.
+	 */
+	ImportMonitor register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=Import,name="
+					+ ObjectName.quote(redmineProject + " -> " + oneDevProject) + ",id=" + nextId.incrementAndGet());
+			server.registerMBean(this, name);
+			objectName = name;
+		} catch (JMException e) {
+			logger.warn("Unable to register import monitor: " + e.getMessage());
+		}
+		return this;
+	}
+
+	void issueMapped(Issue issue, int journals) {
+		issueCount.incrementAndGet();
+		journalCount.addAndGet(journals);
+
+		long heapEstimate = ENTITY_OVERHEAD + getHeapSize(issue.getTitle()) + getHeapSize(issue.getDescription());
+		for (IssueComment comment: issue.getComments())
+			heapEstimate += ENTITY_OVERHEAD + getHeapSize(comment.getContent());
+		int others = issue.getChanges().size() + issue.getFields().size() + issue.getWatches().size()
+				+ issue.getSchedules().size();
+		heapEstimate += (long) others * ENTITY_OVERHEAD;
+
+		// only written by the import thread
+		pendingEntities += 1 + issue.getComments().size() + others;
+		pendingEntitiesHeapEstimate += heapEstimate;
+	}
+
+	/**
+	 * Called once issues mapped so far are saved.
+	 */
+	void batchSaved() {
+		pendingEntities = 0;
+		pendingEntitiesHeapEstimate = 0;
+	}
+
+	private static long getHeapSize(@Nullable String text) {
+		return text != null ? 2L * text.length() : 0;
+	}
+
+	private double getRate(long count) {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		return seconds > 0 ? count / seconds : 0;
+	}
+
+	@Override
+	public String getRedmineProject() {
+		return redmineProject;
+	}
+
+	@Override
+	public String getOneDevProject() {
+		return oneDevProject;
+	}
+
+	@Override
+	public long getElapsedSeconds() {
+		return (System.nanoTime() - startTime) / 1_000_000_000L;
+	}
+
+	@Override
+	public long getIssueCount() {
+		return issueCount.get();
+	}
+
+	@Override
+	public double getIssuesPerSecond() {
+		return getRate(issueCount.get());
+	}
+
+	@Override
+	public long getJournalCount() {
+		return journalCount.get();
+	}
+
+	@Override
+	public double getJournalsPerSecond() {
+		return getRate(journalCount.get());
+	}
+
+	@Override
+	public long getAttachmentBytes() {
+		return client.getMetrics().get(ImportMetrics.ATTACHMENTS).getBytes();
+	}
+
+	@Override
+	public double getAttachmentBytesPerSecond() {
+		return getRate(getAttachmentBytes());
+	}
+
+	@Override
+	public int getInFlightRequests() {
+		return client.getStats().inFlightRequests.get();
+	}
+
+	@Override
+	public int getDetailQueueDepth() {
+		return detailFetcher.getQueueDepth();
+	}
+
+	@Override
+	public long getConversionQueueDepth() {
+		return conversionStage.getQueueDepth();
+	}
+
+	@Override
+	public int getAttachmentQueueDepth() {
+		return attachmentPipeline.getQueueDepth();
+	}
+
+	@Override
+	public int getPendingEntities() {
+		return pendingEntities;
+	}
+
+	@Override
+	public long getPendingEntitiesHeapEstimate() {
+		return pendingEntitiesHeapEstimate;
+	}
+
+	@Override
+	public long getHeapUsed() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	@Override
+	public void close() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				logger.warn("Unable to unregister import monitor: " + e.getMessage());
+			}
+			objectName = null;
+		}
+	}
+
+}
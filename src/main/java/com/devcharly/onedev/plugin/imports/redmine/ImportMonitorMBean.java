@@ -0,0 +1,40 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+/**
+ * Live metrics of a running issue import, exposed through JMX by {@link ImportMonitor}.
+ */
+public interface ImportMonitorMBean {
+
+	String getRedmineProject();
+
+	String getOneDevProject();
+
+	long getElapsedSeconds();
+
+	long getIssueCount();
+
+	double getIssuesPerSecond();
+
+	long getJournalCount();
+
+	double getJournalsPerSecond();
+
+	long getAttachmentBytes();
+
+	double getAttachmentBytesPerSecond();
+
+	int getInFlightRequests();
+
+	int getDetailQueueDepth();
+
+	long getConversionQueueDepth();
+
+	int getAttachmentQueueDepth();
+
+	int getPendingEntities();
+
+	long getPendingEntitiesHeapEstimate();
+
+	long getHeapUsed();
+
+}
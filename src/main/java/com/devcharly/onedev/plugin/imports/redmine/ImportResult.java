@@ -3,8 +3,10 @@ package com.devcharly.onedev.plugin.imports.redmine;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.unbescape.html.HtmlEscape;
@@ -19,11 +21,14 @@ public class ImportResult {
 	Set<String> unmappedIssuePriorities = new HashSet<>();
 	Set<String> unmappedIssueFields = new HashSet<>();
 	Set<String> tooLargeAttachments = new LinkedHashSet<>();
+	Set<String> unconvertedTexts = new LinkedHashSet<>();
 
 	Set<String> nonExistentMilestones = new HashSet<>();
 
 	List<String> notes = new ArrayList<>();
 
+	Map<String, String> statistics = new LinkedHashMap<>();
+
 	private String getEntryFeedback(String entryDescription, Collection<String> entries) {
 		if (entries.size() > MAX_DISPLAY_ENTRIES) {
 			List<String> entriesToDisplay = new ArrayList<>(entries).subList(0, MAX_DISPLAY_ENTRIES);
@@ -40,7 +45,8 @@ public class ImportResult {
 
 		if (!nonExistentMilestones.isEmpty() || !unmappedIssueTypes.isEmpty()
 				|| !unmappedIssuePriorities.isEmpty() || !unmappedIssueFields.isEmpty()
-				|| !nonExistentLogins.isEmpty() || !tooLargeAttachments.isEmpty() || !notes.isEmpty()) {
+				|| !nonExistentLogins.isEmpty() || !tooLargeAttachments.isEmpty() || !unconvertedTexts.isEmpty()
+				|| !notes.isEmpty()) {
 			hasNotice = true;
 		}
 
@@ -68,6 +74,10 @@ public class ImportResult {
 		if (!tooLargeAttachments.isEmpty()) {
 			feedback.append(getEntryFeedback("Too large attachments", tooLargeAttachments));
 		}
+		if (!unconvertedTexts.isEmpty()) {
+			feedback.append(getEntryFeedback("Redmine issues with texts too large or too slow to convert, "
+					+ "imported verbatim", unconvertedTexts));
+		}
 		if (!notes.isEmpty()) {
 			int size = Math.min(notes.size(), MAX_DISPLAY_ENTRIES);
 			for (int i = 0; i < size; i++) {
@@ -80,6 +90,15 @@ public class ImportResult {
 		if (hasNotice)
 			feedback.append("</ul>");
 
+		if (!statistics.isEmpty()) {
+			feedback.append("<br><b>STATISTICS:</b><ul>");
+			for (Map.Entry<String, String> entry: statistics.entrySet()) {
+				feedback.append("<li> ").append(HtmlEscape.escapeHtml5(entry.getKey())).append(": ")
+						.append(HtmlEscape.escapeHtml5(entry.getValue()));
+			}
+			feedback.append("</ul>");
+		}
+
 		return feedback.toString();
 
 	}
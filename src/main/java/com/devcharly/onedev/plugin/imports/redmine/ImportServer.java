@@ -3,6 +3,7 @@ package com.devcharly.onedev.plugin.imports.redmine;
 import java.io.Serializable;
 
 import javax.validation.ConstraintValidatorContext;
+import javax.validation.constraints.Min;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
@@ -12,6 +13,8 @@ import javax.ws.rs.core.Response;
 import org.apache.wicket.MetaDataKey;
 import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import io.onedev.commons.utils.StringUtils;
@@ -33,6 +36,10 @@ public class ImportServer implements Serializable, Validatable {
 
 	};
 
+	private static final int CONNECT_TIMEOUT = 30000;
+
+	private static final int READ_TIMEOUT = 300000;
+
 	static final String PROP_API_URL = "apiUrl";
 
 	static final String PROP_ACCESS_TOKEN = "accessToken";
@@ -41,6 +48,26 @@ public class ImportServer implements Serializable, Validatable {
 
 	private String accessToken;
 
+	private int listConcurrency = 4;
+
+	private int detailConcurrency = 4;
+
+	private int attachmentConcurrency = 2;
+
+	private int attachmentBandwidth;
+
+	private int attachmentStoreMaxSize;
+
+	private int maxConnections = 5;
+
+	private int requestsPerSecond;
+
+	private int maxRetries = 5;
+
+	private int responseCacheMaxSize = 512;
+
+	private int responseCacheMaxAge = 72;
+
 	@Editable(order=10, name="Redmine API URL", description="Specify Redmine API url, for instance <tt>https://api.redmine.com</tt>")
 	@NotEmpty
 	public String getApiUrl() {
@@ -62,6 +89,120 @@ public class ImportServer implements Serializable, Validatable {
 		this.accessToken = accessToken;
 	}
 
+	@Editable(order=200, name="Parallel page requests", description="Maximum number of list pages requested "
+			+ "concurrently from Redmine. Use <tt>1</tt> to fetch pages one after another")
+	@Min(1)
+	public int getListConcurrency() {
+		return listConcurrency;
+	}
+
+	public void setListConcurrency(int listConcurrency) {
+		this.listConcurrency = listConcurrency;
+	}
+
+	@Editable(order=210, name="Parallel issue requests", description="Maximum number of issue details "
+			+ "(history, attachments, relations) fetched concurrently from Redmine while issues are imported")
+	@Min(1)
+	public int getDetailConcurrency() {
+		return detailConcurrency;
+	}
+
+	public void setDetailConcurrency(int detailConcurrency) {
+		this.detailConcurrency = detailConcurrency;
+	}
+
+	@Editable(order=215, name="Parallel attachment downloads", description="Maximum number of attachments "
+			+ "downloaded concurrently from Redmine. Attachments are downloaded in the background while issues "
+			+ "are imported, and stored when their issue is saved")
+	@Min(1)
+	public int getAttachmentConcurrency() {
+		return attachmentConcurrency;
+	}
+
+	public void setAttachmentConcurrency(int attachmentConcurrency) {
+		this.attachmentConcurrency = attachmentConcurrency;
+	}
+
+	@Editable(order=216, name="Max attachment bandwidth (KB/s)", description="Limits the total bandwidth "
+			+ "used to download attachments. Use <tt>0</tt> for no limit")
+	@Min(0)
+	public int getAttachmentBandwidth() {
+		return attachmentBandwidth;
+	}
+
+	public void setAttachmentBandwidth(int attachmentBandwidth) {
+		this.attachmentBandwidth = attachmentBandwidth;
+	}
+
+	@Editable(order=217, name="Attachment store size (MB)", description="Attachments attached to many "
+			+ "issues are downloaded at most twice per import. If this is not <tt>0</tt>, downloaded attachments "
+			+ "are also kept on disk up to this size, so that later imports do not download them again")
+	@Min(0)
+	public int getAttachmentStoreMaxSize() {
+		return attachmentStoreMaxSize;
+	}
+
+	public void setAttachmentStoreMaxSize(int attachmentStoreMaxSize) {
+		this.attachmentStoreMaxSize = attachmentStoreMaxSize;
+	}
+
+	@Editable(order=220, name="Max connections", description="Maximum number of concurrent requests to the "
+			+ "Redmine server, shared by all imports using the same server and access key. This limits concurrency, "
+			+ "not the pool of kept-alive connections, which holds at most 5 idle connections per server "
+			+ "unless the JVM is started with a higher <tt>http.maxConnections</tt>")
+	@Min(1)
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	@Editable(order=230, name="Max requests per second", description="Limits the rate of requests sent "
+			+ "to the Redmine server. Use <tt>0</tt> for no limit")
+	@Min(0)
+	public int getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+	public void setRequestsPerSecond(int requestsPerSecond) {
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+	@Editable(order=240, name="Max retries", description="Number of times a request is retried with "
+			+ "increasing delay if Redmine is overloaded (status 429, 502, 503 or 504) or can not be reached")
+	@Min(0)
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	@Editable(order=300, name="Response cache size (MB)", description="Redmine responses are cached on disk "
+			+ "so that re-running an import does not download unchanged data again. Use <tt>0</tt> to disable caching")
+	@Min(0)
+	public int getResponseCacheMaxSize() {
+		return responseCacheMaxSize;
+	}
+
+	public void setResponseCacheMaxSize(int responseCacheMaxSize) {
+		this.responseCacheMaxSize = responseCacheMaxSize;
+	}
+
+	@Editable(order=310, name="Response cache max age (hours)", description="Cached responses older than this "
+			+ "are discarded. Use <tt>0</tt> to keep them until the cache size is exceeded")
+	@Min(0)
+	public int getResponseCacheMaxAge() {
+		return responseCacheMaxAge;
+	}
+
+	public void setResponseCacheMaxAge(int responseCacheMaxAge) {
+		this.responseCacheMaxAge = responseCacheMaxAge;
+	}
+
 	public String getApiEndpoint(String apiPath) {
 		return StringUtils.stripEnd(apiUrl, "/") + "/" + StringUtils.stripStart(apiPath, "/");
 	}
@@ -114,7 +255,13 @@ public class ImportServer implements Serializable, Validatable {
 	Client newClient() {
 		Client client = ClientBuilder.newClient();
 		client.property(ClientProperties.FOLLOW_REDIRECTS, true);
+		client.property(ClientProperties.CONNECT_TIMEOUT, CONNECT_TIMEOUT);
+		client.property(ClientProperties.READ_TIMEOUT, READ_TIMEOUT);
 		client.register(HttpAuthenticationFeature.basic(getAccessToken(), "dummy"));
+
+		// request gzip encoded responses, they are decompressed while being read
+		client.register(EncodingFilter.class);
+		client.register(GZipEncoder.class);
 		return client;
 	}
 
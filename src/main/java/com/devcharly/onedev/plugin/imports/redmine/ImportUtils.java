@@ -1,15 +1,23 @@
 package com.devcharly.onedev.plugin.imports.redmine;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -17,24 +25,34 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import javax.annotation.Nullable;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.Invocation;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.Response;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.utils.URIBuilder;
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.joda.time.format.ISODateTimeFormat;
 import org.unbescape.html.HtmlEscape;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import io.onedev.commons.bootstrap.Bootstrap;
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.OneDev;
+import io.onedev.server.entitymanager.IssueFieldManager;
 import io.onedev.server.entitymanager.IssueManager;
 import io.onedev.server.entitymanager.LinkSpecManager;
 import io.onedev.server.entitymanager.MilestoneManager;
@@ -59,20 +77,13 @@ import io.onedev.server.model.support.inputspec.choiceinput.choiceprovider.Choic
 import io.onedev.server.model.support.inputspec.choiceinput.choiceprovider.SpecifiedChoices;
 import io.onedev.server.model.support.issue.LinkSpecOpposite;
 import io.onedev.server.model.support.issue.changedata.IssueChangeData;
-import io.onedev.server.model.support.issue.changedata.IssueFieldChangeData;
 import io.onedev.server.model.support.issue.changedata.IssueLinkAddData;
 import io.onedev.server.model.support.issue.changedata.IssueLinkChangeData;
 import io.onedev.server.model.support.issue.changedata.IssueLinkRemoveData;
-import io.onedev.server.model.support.issue.changedata.IssueMilestoneAddData;
-import io.onedev.server.model.support.issue.changedata.IssueMilestoneChangeData;
-import io.onedev.server.model.support.issue.changedata.IssueMilestoneRemoveData;
-import io.onedev.server.model.support.issue.changedata.IssueStateChangeData;
-import io.onedev.server.model.support.issue.changedata.IssueTitleChangeData;
 import io.onedev.server.model.support.issue.field.spec.ChoiceField;
 import io.onedev.server.model.support.issue.field.spec.FieldSpec;
+import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.dao.Dao;
-import io.onedev.server.util.Input;
-import io.onedev.server.util.JerseyUtils;
 import io.onedev.server.util.JerseyUtils.PageDataConsumer;
 import io.onedev.server.util.Pair;
 
@@ -107,7 +118,7 @@ public class ImportUtils {
 
 	static IssueImportOption buildImportOption(ImportServer server, Collection<String> redmineProjects, TaskLogger logger) {
 		IssueImportOption importOption = new IssueImportOption();
-		Client client = server.newClient();
+		RedmineClient client = new RedmineClient(server);
 		try {
 			Set<String> statuses = new LinkedHashSet<>();
 			String statusesApiEndpoint = server.getApiEndpoint("/issue_statuses.json");
@@ -174,22 +185,37 @@ public class ImportUtils {
 				mapping.setOneDevIssueField(defaultField);
 				importOption.getIssueFieldMappings().add(mapping);
 			}
+
+			logger.log("Fetched Redmine metadata (" + client.getMetrics().getSummary(ImportMetrics.LIST) + ")");
 		} finally {
 			client.close();
 		}
 		return importOption;
 	}
 
+	/**
+	 * Finds OneDev user of given email, looking up each distinct email only once per import.
+	 *
+	 * @param usersByEmail
+	 * 			users found so far by lower-cased email
+	 */
+	@Nullable
+	private static User findUserByEmail(String email, Map<String, Optional<User>> usersByEmail) {
+		return usersByEmail.computeIfAbsent(email.toLowerCase(),
+				k -> Optional.ofNullable(OneDev.getInstance(UserManager.class).findByEmail(email))).orElse(null);
+	}
+
 	@Nullable
-	static User getUser(Client client, ImportServer importSource,
+	static User getUser(RedmineClient client, ImportServer importSource, Map<String, Optional<User>> usersByEmail,
 			Map<String, Optional<User>> users, String login, TaskLogger logger) {
 		Optional<User> userOpt = users.get(login);
 		if (userOpt == null) {
+			long start = System.nanoTime();
 			String apiEndpoint = importSource.getApiEndpoint("/users/" + login + ".json");
 			try {
-				String email = JerseyUtils.get(client, apiEndpoint, logger).get("user").get("mail").asText(null);
+				String email = client.get(apiEndpoint, logger).get("user").get("mail").asText(null);
 				if (email != null)
-					userOpt = Optional.ofNullable(OneDev.getInstance(UserManager.class).findByEmail(email));
+					userOpt = Optional.ofNullable(findUserByEmail(email, usersByEmail));
 				else
 					userOpt = Optional.empty();
 			} catch (ExplicitException|NullPointerException ex) {
@@ -197,14 +223,54 @@ public class ImportUtils {
 				userOpt = Optional.empty();
 			}
 			users.put(login, userOpt);
+			client.getMetrics().get(ImportMetrics.USERS).record(System.nanoTime() - start);
 		}
 		return userOpt.orElse(null);
 	}
 
+	/**
+	 * Resolves Redmine users of given user list in bulk. Each distinct email is looked up only
+	 * once, and users without email are remembered as unknown, so that {@link #getUser} only
+	 * needs to query Redmine for users which are not listed.
+	 */
+	static void preloadUsers(List<JsonNode> userNodes, Map<String, Optional<User>> usersByEmail,
+			Map<String, Optional<User>> users, TaskLogger logger) {
+		int count = 0;
+		for (JsonNode userNode: userNodes) {
+			String login = userNode.get("id").asText();
+			if (users.containsKey(login))
+				continue;
+			JsonNode mailNode = userNode.get("mail");
+			String email = (mailNode != null) ? mailNode.asText(null) : null;
+			Optional<User> userOpt;
+			if (email != null && !email.isEmpty())
+				userOpt = Optional.ofNullable(findUserByEmail(email, usersByEmail));
+			else
+				userOpt = Optional.empty();
+			users.put(login, userOpt);
+			count++;
+		}
+		logger.log("Preloaded " + count + " Redmine users");
+	}
+
+	static boolean isAdmin(RedmineClient client, ImportServer server, TaskLogger logger) {
+		String apiEndpoint = server.getApiEndpoint("/users/current.json");
+		JsonNode adminNode = client.get(apiEndpoint, logger).get("user").get("admin");
+		return adminNode != null && adminNode.asBoolean();
+	}
+
 	static ImportResult importIssues(ImportServer server, String redmineProject, Project oneDevProject,
 			IssueImportOption importOption, Map<String, Optional<User>> users,
 			boolean dryRun, TaskLogger logger) {
-		Client client = server.newClient();
+		RedmineClient client = new RedmineClient(server);
+		TextConversionStage conversionStage = new TextConversionStage(importOption, client.getMetrics());
+		IssueDetailFetcher detailFetcher = new IssueDetailFetcher(server, client, server.getDetailConcurrency(),
+				conversionStage, logger);
+		AttachmentPipeline attachmentPipeline = new AttachmentPipeline(server, client, logger);
+		ImportMonitor monitor = new ImportMonitor(redmineProject, oneDevProject, client, detailFetcher,
+				conversionStage, attachmentPipeline).register();
+		ImportJournal journal = null;
+		DeferredAttachmentImport deferredAttachments = null;
 		try {
 			String redmineProjectId = getRedmineProjectId(redmineProject);
 			Set<String> nonExistentMilestones = new HashSet<>();
@@ -264,10 +330,19 @@ public class ImportUtils {
 			for (Milestone milestone: oneDevProject.getMilestones())
 				milestoneMappings.put(milestone.getName(), milestone);
 
-			String usersApiEndpoint = server.getApiEndpoint("/users.json");
-			for (JsonNode userNode: list(client, usersApiEndpoint, "users", logger))
+			long metadataStart = System.nanoTime();
+
+			// empty status lists users of all statuses, including locked ones
+			String usersApiEndpoint = server.getApiEndpoint("/users.json?status=");
+			List<JsonNode> userNodes = list(client, usersApiEndpoint, "users", server.getListConcurrency(), logger);
+			for (JsonNode userNode: userNodes)
 				userId2nameMap.put(userNode.get("id").asText(), userNode.get("firstname").asText() + " " + userNode.get("lastname").asText());
 
+			// user emails are only listed for administrators
+			Map<String, Optional<User>> usersByEmail = new HashMap<>();
+			if (isAdmin(client, server, logger))
+				preloadUsers(userNodes, usersByEmail, users, logger);
+
 			String versionsApiEndpoint = server.getApiEndpoint("/projects/" + redmineProjectId + "/versions.json");
 			for (JsonNode versionNode: list(client, versionsApiEndpoint, "versions", logger))
 				versionId2nameMap.put(versionNode.get("id").asText(), versionNode.get("name").asText());
@@ -292,76 +367,135 @@ public class ImportUtils {
 			for (JsonNode customFieldNode: list(client, customFieldsApiEndpoint, "custom_fields", logger))
 				fieldId2nameMap.put(customFieldNode.get("id").asText(), customFieldNode.get("name").asText());
 
-			importIssueCategories(server, redmineProject, importOption, dryRun, logger);
+			client.getMetrics().get(ImportMetrics.METADATA).record(System.nanoTime() - metadataStart);
 
-			String initialIssueState = issueSetting.getInitialStateSpec().getName();
+			JournalDetailMapper journalDetailMapper = new JournalDetailMapper(importOption, userId2nameMap,
+					versionId2nameMap, statusId2nameMap, trackerId2nameMap, priorityId2nameMap,
+					categoryId2nameMap, fieldId2nameMap, login -> getUser(client, server, usersByEmail, users, login, logger));
 
-			List<Issue> issues = new ArrayList<>();
+			importIssueCategories(server, redmineProject, importOption, dryRun, logger);
 
-			Map<Long, Long> issueNumberMappings = new HashMap<>();
-			Map<Long, Issue> issuesMap = new HashMap<>();
-			Map<Long, Long> redmineParents = new HashMap<>();
-			Map<String, JsonNode> redmineRelations = new HashMap<>();
+			// imported milestones and category field are committed before the first batch of issues
+			if (!dryRun)
+				commitAndClear(oneDevProject);
 
-			AtomicInteger numOfImportedIssues = new AtomicInteger(0);
-			PageDataConsumer pageDataConsumer = new PageDataConsumer() {
+			String initialIssueState = issueSetting.getInitialStateSpec().getName();
 
-				@Nullable
-				private String processAttachments(String issueUUID, String readableIssueId, @Nullable String markdown,
-						List<JsonNode> attachmentNodes, Set<String> tooLargeAttachments) {
-					if (markdown == null)
-						markdown = "";
+			LongLongMap issueNumberMappings = new LongLongMap();
+
+			// issues imported by a previous import and updated by this one, mapped to ID of existing issue
+			Map<Issue, Long> updatedIssues = new IdentityHashMap<>();
+			ImportCheckpoint checkpoint = importOption.isIncremental()
+					? ImportCheckpoint.load(server, redmineProjectId, oneDevProject)
+					: null;
+			Date checkpointDate = (checkpoint != null && checkpoint.lastUpdatedOn != null)
+					? ISODateTimeFormat.dateTimeNoMillis().parseDateTime(checkpoint.lastUpdatedOn).toDate()
+					: null;
+			if (checkpoint != null)
+				checkpoint.issueNumbers.forEach(issueNumberMappings::put);
+			// journals which are listed again by the next incremental import
+			Set<Long> checkpointJournalIds = new HashSet<>();
+			AtomicReference<Date> listStartDate = new AtomicReference<>();
+
+			journal = ImportJournal.open(server, redmineProjectId, oneDevProject, importOption.isResume(), dryRun,
+					issueId -> OneDev.getInstance(Dao.class).get(Issue.class, issueId) != null);
+			if (journal.isResumed()) {
+				logger.log("Resuming interrupted import, " + journal.getIssueCount() + " issues were imported before");
+				journal.issueNumbers.forEach(issueNumberMappings::put);
+			}
+			ImportJournal importJournal = journal;
+
+			if (!dryRun)
+				deferredAttachments = DeferredAttachmentImport.open(server, redmineProjectId, oneDevProject);
+			DeferredAttachmentImport batchDeferredAttachments = deferredAttachments;
+
+			// issues are saved in transactions of given size, only journal records are kept once
+			// a batch is committed
+			BulkWriter bulkWriter = new BulkWriter();
+			List<Issue> batchIssues = new ArrayList<>();
+			Map<Issue, Long> batchRedmineIssueIds = new IdentityHashMap<>();
+			Map<Issue, PendingAttachments> batchAttachments = new IdentityHashMap<>();
+			List<ImportJournal.Record> batchRecords = new ArrayList<>();
+			// attachments imported in the background are recorded once their batch is committed
+			List<DeferredAttachmentImport.Entry> batchDeferredEntries = new ArrayList<>();
+			AtomicInteger deferredCount = new AtomicInteger();
+			Runnable saveBatch = () -> {
+				if (dryRun) {
+					for (Issue issue: batchIssues) {
+						batchRecords.add(ImportJournal.issue(batchRedmineIssueIds.get(issue), issue.getNumber(),
+								null, updatedIssues.containsKey(issue)));
+					}
+					importJournal.add(batchRecords);
+				} else if (!batchIssues.isEmpty()) {
+					// attachments downloaded while the batch was mapped can now be stored and linked
+					for (Map.Entry<Issue, PendingAttachments> entry: batchAttachments.entrySet()) {
+						Issue issue = entry.getKey();
+						issue.setDescription(saveAttachments(oneDevProject, issue, entry.getValue(),
+								attachmentPipeline, importJournal, batchDeferredEntries));
+					}
+					client.getMetrics().time(ImportMetrics.PERSISTENCE, () -> {
+						saveIssues(batchIssues, batchRedmineIssueIds, updatedIssues,
+								issueNumberMappings, bulkWriter, batchRecords);
+						importJournal.add(batchRecords);
+						importJournal.sync();
+						commitAndClear(oneDevProject);
+						return null;
+					});
+					importJournal.commit();
+					batchDeferredAttachments.add(batchDeferredEntries);
+					deferredCount.addAndGet(batchDeferredEntries.size());
+				}
+				batchIssues.forEach(updatedIssues::remove);
+				batchIssues.clear();
+				batchRedmineIssueIds.clear();
+				batchAttachments.clear();
+				batchRecords.clear();
+				batchDeferredEntries.clear();
+				monitor.batchSaved();
+			};
 
-					String attachmentsLinks = "";
+			AtomicInteger numOfImportedIssues = new AtomicInteger(journal.getIssueCount());
+			PageDataConsumer pageDataConsumer = new PageDataConsumer() {
 
+				/**
+				 * Starts downloading given attachments in the background, except too large ones,
+				 * those stored before and those imported later.
+				 */
+				private List<PendingAttachment> downloadAttachments(Long redmineIssueId, String readableIssueId,
+						boolean existingIssue, List<RedmineIssueDetail.Attachment> attachments,
+						Set<String> tooLargeAttachments) {
+					List<PendingAttachment> pendingAttachments = new ArrayList<>();
 					long maxUploadFileSize = OneDev.getInstance(SettingManager.class)
 							.getPerformanceSetting().getMaxUploadFileSize()*1L*1024*1024;
-					for (JsonNode attachmentNode: attachmentNodes) {
-						String attachmentName = attachmentNode.get("filename").asText(null);
-						String attachmentUrl = attachmentNode.get("content_url").asText(null);
-						long attachmentSize = attachmentNode.get("filesize").asLong(0);
+					for (RedmineIssueDetail.Attachment attachment: attachments) {
+						String attachmentName = attachment.filename;
+						String attachmentUrl = attachment.contentUrl;
+						long attachmentSize = attachment.filesize;
 						if (attachmentSize != 0 && attachmentName != null && attachmentUrl != null) {
 							if (attachmentSize >  maxUploadFileSize) {
 								tooLargeAttachments.add(readableIssueId + ":" + attachmentName);
 							} else {
-								String endpoint = attachmentUrl;
-								WebTarget target = client.target(endpoint);
-								Invocation.Builder builder =  target.request();
-								try (Response response = builder.get()) {
-									String errorMessage = JerseyUtils.checkStatus(endpoint, response);
-									if (errorMessage != null) {
-										throw new ExplicitException(String.format(
-												"Error downloading attachment (url: %s, error message: %s)",
-												endpoint, errorMessage));
-									}
-									try (InputStream is = response.readEntity(InputStream.class)) {
-										String oneDevAttachmentName = oneDevProject.saveAttachment(issueUUID, attachmentName, is);
-										String oneDevAttachmentUrl = oneDevProject.getAttachmentUrlPath(issueUUID, oneDevAttachmentName);
-										if (markdown.contains("(" + attachmentName + ")")) {
-											markdown = markdown.replace("(" + attachmentName + ")", "(" + oneDevAttachmentUrl + ")");
-										}
-
-										String description = attachmentNode.get("description").asText();
-										attachmentsLinks += "[" + attachmentName + "](" + oneDevAttachmentUrl + ")"
-												+ (!description.isEmpty() ? " - " + description : "")
-												+ " (" + attachmentNode.get("author").get("name").asText()
-												+ ", " + attachmentNode.get("created_on").asText() + ")\n";
-									} catch (IOException e) {
-										throw new RuntimeException(e);
-									}
-								}
-
+								String oneDevAttachmentName = findStoredAttachment(redmineIssueId, existingIssue, attachment.id);
+								boolean download = oneDevAttachmentName == null && !importOption.isDeferAttachments();
+								pendingAttachments.add(new PendingAttachment(attachment, oneDevAttachmentName,
+										download ? attachmentPipeline.download(attachment) : null));
 							}
 						}
 					}
+					return pendingAttachments;
+				}
 
-					if (!attachmentsLinks.isEmpty())
-						markdown += "\n\n**Attachments:**\n" + attachmentsLinks;
-
-					if (markdown.length() == 0)
-						markdown = null;
-
-					return markdown;
+				/**
+				 * Gets name of given attachment if it was stored before an interrupted import was resumed,
+				 * or by a previous import of the existing issue.
+				 */
+				@Nullable
+				private String findStoredAttachment(Long redmineIssueId, boolean existingIssue, long attachmentId) {
+					for (ImportJournal.Record record: importJournal.attachments.getOrDefault(redmineIssueId, Collections.emptyList())) {
+						if (record.id == attachmentId)
+							return record.name;
+					}
+					return (existingIssue && checkpoint != null) ? checkpoint.attachmentNames.get(attachmentId) : null;
 				}
 
 				private String joinAsMultilineHtml(List<String> values) {
@@ -371,20 +505,6 @@ public class ImportUtils {
 					return StringUtils.join(escapedValues, "<br>");
 				}
 
-				private String convertText(String str) {
-					if (str == null || str.isEmpty())
-						return str;
-
-					// normalize line separator to NL
-					str = str.replace("\r\n", "\n").replace("\r", "\n");
-
-					// convert textile to markdown
-					if (importOption.isConvertTextileToMarkdown())
-						str = RedmineTextileConverter.convertTextileToMarkdown(str);
-
-					return str;
-				}
-
 				private String findSimilarMilestone(String milestone, Map<String, Milestone> milestoneMappings) {
 					if (milestoneMappings.containsKey(milestone))
 						return milestone;
@@ -427,25 +547,46 @@ public class ImportUtils {
 						// subject --> title
 						issue.setTitle(issueNode.get("subject").asText());
 
-						// description --> description
-						issue.setDescription(convertText(issueNode.get("description").asText(null)));
-
 						// issue id --> number
 						Long oldNumber = issueNode.get("id").asLong();
+
+						// get additional issue information, with texts converted in the background
+						String apiEndpoint = IssueDetailFetcher.getIssueEndpoint(server, oldNumber);
+						RedmineIssueDetail issueDetail = detailFetcher.get(oldNumber);
+
+						// description --> description (set once extra information and attachments are known)
+						String description = issueDetail.convertedDescription;
+
 						Long newNumber;
-						if (importOption.isUseExistingIssueIDs() && OneDev.getInstance(IssueManager.class).find(oneDevProject, oldNumber) != null)
-							throw new ExplicitException("An issue with ID " + oldNumber + " already exists.");
-						if (dryRun || importOption.isUseExistingIssueIDs())
-							newNumber = oldNumber;
-						else
-							newNumber = OneDev.getInstance(IssueManager.class).getNextNumber(oneDevProject);
+						Long previousNumber = (checkpoint != null) ? checkpoint.issueNumbers.get(oldNumber) : null;
+						Issue existingIssue = (previousNumber != null)
+								? OneDev.getInstance(IssueManager.class).find(oneDevProject, previousNumber)
+								: null;
+						if (existingIssue != null) {
+							newNumber = previousNumber;
+							updatedIssues.put(issue, existingIssue.getId());
+						} else {
+							if (importOption.isUseExistingIssueIDs() && OneDev.getInstance(IssueManager.class).find(oneDevProject, oldNumber) != null)
+								throw new ExplicitException("An issue with ID " + oldNumber + " already exists.");
+							if (dryRun || importOption.isUseExistingIssueIDs())
+								newNumber = oldNumber;
+							else
+								newNumber = OneDev.getInstance(IssueManager.class).getNextNumber(oneDevProject);
+						}
 						issue.setNumber(newNumber);
 						issueNumberMappings.put(oldNumber, newNumber);
 
+						// keep attachments of the existing issue, or downloaded before an interrupted import was resumed
+						List<ImportJournal.Record> downloadedAttachments = importJournal.attachments.get(oldNumber);
+						if (existingIssue != null)
+							issue.setUUID(existingIssue.getUUID());
+						else if (downloadedAttachments != null)
+							issue.setUUID(downloadedAttachments.get(0).uuid);
+
 						// parent
 						JsonNode parentNode = issueNode.get("parent");
 						if (parentNode != null)
-							redmineParents.put(oldNumber, parentNode.get("id").asLong());
+							batchRecords.add(ImportJournal.parent(oldNumber, parentNode.get("id").asLong()));
 
 						// status --> state
 						String status = issueNode.get("status").get("name").asText();
@@ -469,7 +610,7 @@ public class ImportUtils {
 
 						// author --> submitter
 						String login = issueNode.get("author").get("id").asText(null);
-						User user = getUser(client, server, users, login, logger);
+						User user = getUser(client, server, usersByEmail, users, login, logger);
 						if (user != null) {
 							issue.setSubmitter(user);
 						} else {
@@ -517,7 +658,7 @@ public class ImportUtils {
 						JsonNode assigneeNode = issueNode.get("assigned_to");
 						if (assigneeNode != null) {
 							login = assigneeNode.get("id").asText();
-							user = getUser(client, server, users, login, logger);
+							user = getUser(client, server, usersByEmail, users, login, logger);
 							if (user != null) {
 								issue.setFieldValue(importOption.getAssigneesIssueField(), user.getName());
 							} else {
@@ -610,67 +751,59 @@ public class ImportUtils {
 							}
 						}
 
-						// get additional issue information
-						String apiEndpoint = server.getApiEndpoint("/issues/" + oldNumber + ".json?include=relations,watchers,attachments,journals");
-						JsonNode issueNode2 = JerseyUtils.get(client, apiEndpoint, logger).get("issue");
-
 						// relations --> links
-						JsonNode relationsNode = issueNode2.get("relations");
-						if (relationsNode != null) {
-							// since Redmine returns relation information in both issues,
-							// put it into a map using relation ID as key to eliminate duplicates
-							for (JsonNode relationNode: relationsNode)
-								redmineRelations.put(relationNode.get("id").asText(), relationNode);
+						// since Redmine returns relation information in both issues,
+						// the journal keeps them by relation ID to eliminate duplicates
+						for (RedmineIssueDetail.Relation relation: issueDetail.relations) {
+							batchRecords.add(ImportJournal.relation(relation.id, relation.issueId,
+									relation.issueToId, relation.relationType));
 						}
 
 						// watchers --> watches
-						JsonNode watchersNode = issueNode2.get("watchers");
-						if (watchersNode != null) {
-							for (JsonNode watcherNode: watchersNode) {
-								login = watcherNode.get("id").asText();
-								user = getUser(client, server, users, login, logger);
-								if (user != null) {
-									IssueWatch watch = new IssueWatch();
-									watch.setIssue(issue);
-									watch.setUser(user);
-									watch.setWatching(true);
-									issue.getWatches().add(watch);
-								} else {
-									user = OneDev.getInstance(UserManager.class).getUnknown();
-									nonExistentLogins.add(watcherNode.get("name").asText() + ":" + login);
-								}
+						for (RedmineIssueDetail.Watcher watcher: issueDetail.watchers) {
+							login = watcher.id;
+							user = getUser(client, server, usersByEmail, users, login, logger);
+							if (user != null) {
+								IssueWatch watch = new IssueWatch();
+								watch.setIssue(issue);
+								watch.setUser(user);
+								watch.setWatching(true);
+								issue.getWatches().add(watch);
+							} else {
+								user = OneDev.getInstance(UserManager.class).getUnknown();
+								nonExistentLogins.add(watcher.name + ":" + login);
 							}
 						}
 
 						// attachments
-						JsonNode attachmentsNode = issueNode2.get("attachments");
-						if (!dryRun && attachmentsNode != null) {
-							List<JsonNode> attachmentNodes = new ArrayList<>();
-							for (JsonNode attachmentNode: attachmentsNode)
-								attachmentNodes.add(attachmentNode);
-							if (!attachmentNodes.isEmpty()) {
-								issue.setDescription(processAttachments(issue.getUUID(), "#" + oldNumber,
-										issue.getDescription(), attachmentNodes, tooLargeAttachments));
-							}
+						if (!dryRun && !issueDetail.attachments.isEmpty()) {
+							batchAttachments.put(issue, new PendingAttachments(oldNumber, extraIssueInfo, description,
+									downloadAttachments(oldNumber, "#" + oldNumber, updatedIssues.containsKey(issue),
+											issueDetail.attachments, tooLargeAttachments)));
 						}
 
 						// journals ("History") --> comments, changes
-						JsonNode journalsNode = issueNode2.get("journals");
-						for (JsonNode journalNode: journalsNode) {
-							login = journalNode.get("user").get("id").asText();
-							user = getUser(client, server, users, login, logger);
+						for (RedmineIssueDetail.Journal journal: issueDetail.journals) {
+							login = journal.userId;
+							user = getUser(client, server, usersByEmail, users, login, logger);
 							if (user == null) {
 								user = OneDev.getInstance(UserManager.class).getUnknown();
-								nonExistentLogins.add(journalNode.get("user").get("name").asText() + ":" + login);
+								nonExistentLogins.add(journal.userName + ":" + login);
 							}
 
 							Date createdOn = ISODateTimeFormat.dateTimeNoMillis()
-									.parseDateTime(journalNode.get("created_on").asText())
+									.parseDateTime(journal.createdOn)
 									.toDate();
+							if (!createdOn.before(listStartDate.get()))
+								checkpointJournalIds.add(journal.id);
+
+							// journals of an updated issue were added by the previous import, except
+							// those created since its checkpoint
+							boolean addJournal = existingIssue == null || checkpointDate == null
+									|| (!createdOn.before(checkpointDate) && !checkpoint.journalIds.contains(journal.id));
 
 							IssueComment comment = null;
-							JsonNode notesNode = journalNode.get("notes");
-							String notes = convertText((notesNode != null) ? notesNode.asText() : "");
+							String notes = journal.convertedNotes;
 							if (!notes.isEmpty()) {
 								comment = new IssueComment();
 								comment.setIssue(issue);
@@ -678,383 +811,258 @@ public class ImportUtils {
 								comment.setUser(user);
 								comment.setDate(createdOn);
 
-								issue.getComments().add(comment);
-								issue.setCommentCount(issue.getCommentCount() + 1);
+								if (addJournal) {
+									PendingAttachments pendingAttachments = batchAttachments.get(issue);
+									if (pendingAttachments != null)
+										pendingAttachments.comments.add(comment);
+
+									issue.getComments().add(comment);
+									issue.setCommentCount(issue.getCommentCount() + 1);
+								}
 
 								lastUpdate.setActivity("commented");
 								lastUpdate.setDate(comment.getDate());
 								lastUpdate.setUser(comment.getUser());
 							}
 
-							JsonNode detailsNode = journalNode.get("details");
-							if (detailsNode != null) {
-								Map<String, Input> oldFields = new LinkedHashMap<>();
-								Map<String, Input> newFields = new LinkedHashMap<>();
-
-								for (JsonNode detailNode : detailsNode) {
-									String property = detailNode.get("property").asText();
-									String name = detailNode.get("name").asText();
-									JsonNode oldValueNode = detailNode.get("old_value");
-									JsonNode newValueNode = detailNode.get("new_value");
-									String oldValue = (oldValueNode != null) ? oldValueNode.asText(null) : null;
-									String newValue = (newValueNode != null) ? newValueNode.asText(null) : null;
-									IssueChangeData data = null;
-
-									if ("attr".equals(property)) {
-										if ("subject".equals(name)) {
-											data = new IssueTitleChangeData(oldValue, newValue);
-										} else if ("description".equals(name)) {
-											// not migrated because OneDev does not support description history
-										} else if ("status_id".equals(name)) {
-											// do not convert Redmine status to OneDev state for change history
-											String oldStatus = statusId2nameMap.get(oldValue);
-											String newStatus = statusId2nameMap.get(newValue);
-											data = new IssueStateChangeData(oldStatus, newStatus, Collections.emptyMap(), Collections.emptyMap());
-										} else if ("tracker_id".equals(name)) {
-											// do not convert Redmine tracker to OneDev type for change history
-											String oldTracker = trackerId2nameMap.get(oldValue);
-											String newTracker = trackerId2nameMap.get(newValue);
-											addToFields("Type", oldTracker, oldFields);
-											addToFields("Type", newTracker, newFields);
-										} else if ("priority_id".equals(name)) {
-											// do not convert Redmine priority to OneDev priority for change history
-											String oldPriority = priorityId2nameMap.get(oldValue);
-											String newPriority = priorityId2nameMap.get(newValue);
-											addToFields("Priority", oldPriority, oldFields);
-											addToFields("Priority", newPriority, newFields);
-										} else if ("assigned_to_id".equals(name)) {
-											if (oldValue != null) {
-												User oldUser = getUser(client, server, users, oldValue, logger);
-												if (oldUser != null)
-													addToFields(importOption.getAssigneesIssueField(), oldUser.getName(), oldFields);
-												else
-													nonExistentLogins.add(userId2nameMap.getOrDefault(oldValue, "") + ":" + oldValue);
-											}
-											if (newValue != null) {
-												User newUser = getUser(client, server, users, newValue, logger);
-												if (newUser != null)
-													addToFields(importOption.getAssigneesIssueField(), newUser.getName(), newFields);
-												else
-													nonExistentLogins.add(userId2nameMap.getOrDefault(newValue, "") + ":" + newValue);
-											}
-										} else if ("category_id".equals(name)) {
-											String oldCategory = categoryId2nameMap.get(oldValue);
-											String newCategory = categoryId2nameMap.get(newValue);
-											addToFields(importOption.getCategoryIssueField(), oldCategory, oldFields);
-											addToFields(importOption.getCategoryIssueField(), newCategory, newFields);
-										} else if ("fixed_version_id".equals(name)) {
-											String oldVersion = versionId2nameMap.get(oldValue);
-											String newVersion = versionId2nameMap.get(newValue);
-											if (oldVersion != null && newVersion != null) {
-												Milestone oldMilestone = new Milestone();
-												Milestone newMilestone = new Milestone();
-												oldMilestone.setName(oldVersion);
-												newMilestone.setName(newVersion);
-												data = new IssueMilestoneChangeData(Collections.singletonList(oldMilestone), Collections.singletonList(newMilestone));
-											} else if (newVersion != null) {
-												data = new IssueMilestoneAddData(newVersion);
-											} else if (oldVersion != null) {
-												data = new IssueMilestoneRemoveData(oldVersion);
-											}
-										} else if ("start_date".equals(name)) {
-											String fieldName = importOption.getStartDateField();
-											if (fieldName == null)
-												fieldName = "Start date";
-											addToFields(fieldName, oldValue, oldFields);
-											addToFields(fieldName, newValue, newFields);
-										} else if ("due_date".equals(name)) {
-											String fieldName = importOption.getDueDateField();
-											if (fieldName == null)
-												fieldName = "Due date";
-											addToFields(fieldName, oldValue, oldFields);
-											addToFields(fieldName, newValue, newFields);
-										} else if ("done_ratio".equals(name)) {
-											String fieldName = importOption.getDoneRatioField();
-											if (fieldName == null)
-												fieldName = "Done Ratio";
-											addToFields(fieldName, oldValue, oldFields);
-											addToFields(fieldName, newValue, newFields);
-										} else if ("estimated_hours".equals(name)) {
-											String fieldName = importOption.getEstimatedHoursField();
-											if (fieldName == null)
-												fieldName = "Estimated Hours";
-											addToFields(fieldName, oldValue, oldFields);
-											addToFields(fieldName, newValue, newFields);
-										} else {
-											resultNotes.add(String.format(
-												"Unknown history property name '%s' in Redmine issue <a href=\"%s\">#%d</a> (<a href=\"%s\">JSON</a>)",
-												HtmlEscape.escapeHtml5(name), server.getApiEndpoint("/issues/" + oldNumber), oldNumber, apiEndpoint));
-										}
-									} else if ("relation".equals(property)) {
-										String linkName;
-										switch (detailNode.get("name").asText()) {
-											case "relates":     linkName = "Related To"; break;
-											case "duplicates":  linkName = "Duplicating"; break;
-											case "duplicated":  linkName = "Duplicated By"; break;
-											case "blocks":      linkName = "Blocking"; break;
-											case "blocked":     linkName = "Blocked By"; break;
-											case "precedes":    linkName = "Precedes"; break;
-											case "follows":     linkName = "Follows"; break;
-											case "copied_to":   linkName = "Copied To"; break;
-											case "copied_from": linkName = "Copied From"; break;
-											default:            linkName = "Unknown"; break;
-										}
-										data = new TempIssueLinkChangeData(linkName, oldValue, newValue);
-									} else if ("cf".equals(property)) {
-										// custom fields
-										String fieldName = fieldId2nameMap.get(name);
-										if (fieldName != null) {
-											addToFields(fieldName, oldValue, oldFields);
-											addToFields(fieldName, newValue, newFields);
-										} else {
-											resultNotes.add(String.format(
-												"Unknown history custom field '%s' in Redmine issue <a href=\"%s\">#%d</a> (<a href=\"%s\">JSON</a>)",
-												HtmlEscape.escapeHtml5(name), server.getApiEndpoint("/issues/" + oldNumber), oldNumber, apiEndpoint));
-										}
-									} else if ("attachment".equals(property)) {
-										// not migrated because OneDev does not support attachment history
-									} else {
-										resultNotes.add(String.format(
-											"Unknown history property '%s' in Redmine issue <a href=\"%s\">#%d</a> (<a href=\"%s\">JSON</a>)",
-											HtmlEscape.escapeHtml5(property), server.getApiEndpoint("/issues/" + oldNumber), oldNumber, apiEndpoint));
-									}
-
-									if (data != null) {
-										IssueChange issueChange = new IssueChange();
-										issueChange.setIssue(issue);
-										issueChange.setDate(createdOn);
-										issueChange.setUser(user);
-										issueChange.setData(data);
-
-										issue.getChanges().add(issueChange);
-
-										lastUpdate.setActivity(issueChange.getData().getActivity());
-										lastUpdate.setDate(issueChange.getDate());
-										lastUpdate.setUser(issueChange.getUser());
-									}
-								}
-
-								if (!oldFields.isEmpty() || !newFields.isEmpty()) {
-									IssueChange issueChange = new IssueChange();
-									issueChange.setIssue(issue);
-									issueChange.setDate(createdOn);
-									issueChange.setUser(user);
-									issueChange.setData(new IssueFieldChangeData(oldFields, newFields));
-
+							List<IssueChangeData> changes = journalDetailMapper.map(journal.details, nonExistentLogins, (kind, name) -> {
+								resultNotes.add(String.format(
+									"Unknown %s '%s' in Redmine issue <a href=\"%s\">#%d</a> (<a href=\"%s\">JSON</a>)",
+									kind, HtmlEscape.escapeHtml5(name), server.getApiEndpoint("/issues/" + oldNumber), oldNumber, apiEndpoint));
+							});
+							for (IssueChangeData data: changes) {
+								IssueChange issueChange = new IssueChange();
+								issueChange.setIssue(issue);
+								issueChange.setDate(createdOn);
+								issueChange.setUser(user);
+								issueChange.setData(data);
+
+								if (addJournal)
 									issue.getChanges().add(issueChange);
 
-									lastUpdate.setActivity(issueChange.getData().getActivity());
-									lastUpdate.setDate(issueChange.getDate());
-									lastUpdate.setUser(issueChange.getUser());
-								}
+								lastUpdate.setActivity(issueChange.getData().getActivity());
+								lastUpdate.setDate(issueChange.getDate());
+								lastUpdate.setUser(issueChange.getUser());
 							}
 						}
 
-						if (!extraIssueInfo.isEmpty()) {
-							StringBuilder builder = new StringBuilder("|");
-							for (String key: extraIssueInfo.keySet())
-								builder.append(key).append("|");
-							builder.append("\n|");
-							extraIssueInfo.keySet().stream().forEach(it->builder.append("---|"));
-							builder.append("\n|");
-							for (String value: extraIssueInfo.values())
-								builder.append(value).append("|");
-
-							if (issue.getDescription() != null)
-								issue.setDescription(builder.toString() + "\n\n" + issue.getDescription());
-							else
-								issue.setDescription(builder.toString());
-						}
+						if (!batchAttachments.containsKey(issue))
+							issue.setDescription(buildDescription(extraIssueInfo, description, null));
 
 						issue.setLastUpdate(lastUpdate);
 
-						issues.add(issue);
-						issuesMap.put(oldNumber, issue);
+						batchIssues.add(issue);
+						batchRedmineIssueIds.put(issue, oldNumber);
+						monitor.issueMapped(issue, issueDetail.journals.size());
 					}
 
+					if (batchIssues.size() >= importOption.getIssuesPerTransaction())
+						saveBatch.run();
+
 					logger.log("Imported " + numOfImportedIssues.addAndGet(pageData.size()) + " issues");
 				}
 
 			};
 
 
-			String importIssueIDs = importOption.getImportIssueIDs();
-			if (importIssueIDs != null) {
-				int count = 0;
-				StringBuilder ids = new StringBuilder();
-				for (String id: importIssueIDs.split(",")) {
-					id = id.trim();
-					if (id.indexOf('-') > 0) {
-						String[] split = id.split("-");
-						if (split.length != 2)
-							throw new ExplicitException("Invalid issue ID range '" + id + "'");
-
-						try {
-							int from = Integer.parseInt(split[0].trim());
-							int to = Integer.parseInt(split[1].trim());
-							for (int i = from; i <= to; i++) {
-								if (ids.length() > 0)
-									ids.append(',');
-								ids.append(i);
-								count++;
-							}
-						} catch (NumberFormatException ex) {
-							throw new ExplicitException("Invalid issue ID range '" + id + "'");
-						}
-					} else {
-						if (ids.length() > 0)
-							ids.append(',');
-						ids.append(id);
-						count++;
-					}
-				}
-				if (count > 300)
-					throw new ExplicitException("Too many issue IDs (max 300).");
-
-				importIssueIDs = ids.toString();
-			}
+			String importIssueIDs = parseImportIssueIDs(importOption.getImportIssueIDs());
 			logger.log("Importing issues from project " + redmineProject + "...");
 
-			String apiEndpoint = server.getApiEndpoint("/issues.json?project_id=" + redmineProjectId + "&status_id=*&sort=id"
-					+ (importIssueIDs != null ? "&issue_id=" + importIssueIDs : ""));
-			list(client, apiEndpoint, "issues", pageDataConsumer, logger);
-
-			// replace temporary link change data
-			for (Issue issue : issues) {
-				for (IssueChange change : issue.getChanges()) {
-					if (change.getData() instanceof TempIssueLinkChangeData) {
-						TempIssueLinkChangeData data = (TempIssueLinkChangeData) change.getData();
-						String oldIssueSummary = null;
-						if (data.oldValue != null) {
-							Long oldNumber = new Long(data.oldValue);
-							Issue oldIssue = issuesMap.get(oldNumber);
-							oldIssueSummary = "#" + issueNumberMappings.getOrDefault(oldNumber, oldNumber)
-								+ (oldIssue != null ? " - " + oldIssue.getTitle() : "");
-						}
-						String newIssueSummary = null;
-						if (data.newValue != null) {
-							Long newNumber = new Long(data.newValue);
-							Issue newIssue = issuesMap.get(newNumber);
-							newIssueSummary = "#" + issueNumberMappings.getOrDefault(newNumber, newNumber)
-								+ (newIssue != null ? " - " + newIssue.getTitle() : "");
-						}
-						if (oldIssueSummary != null && newIssueSummary != null)
-							change.setData(new IssueLinkChangeData(data.linkName, oldIssueSummary, newIssueSummary));
-						else if (newIssueSummary != null)
-							change.setData(new IssueLinkAddData(data.linkName, newIssueSummary));
-						else if (oldIssueSummary != null)
-							change.setData(new IssueLinkRemoveData(data.linkName, oldIssueSummary));
-					}
-				}
+			if (checkpointDate != null)
+				logger.log("Importing issues updated since " + checkpoint.lastUpdatedOn + "...");
+			String apiEndpoint = getIssuesApiEndpoint(server, redmineProjectId,
+					(checkpointDate != null) ? checkpoint.lastUpdatedOn : null, importIssueIDs);
+
+			// taken before the first page is listed, so that issues updated during the import are
+			// listed again by the next incremental import
+			Instant serverTime = client.getServerTime(server.getApiEndpoint("/users/current.json"), logger);
+			if (serverTime == null) {
+				logger.log("Redmine did not send its time, using time of OneDev as checkpoint");
+				serverTime = Instant.now();
 			}
+			listStartDate.set(Date.from(serverTime));
+			IssueDetailFetcher.LookaheadConsumer lookaheadConsumer = detailFetcher.lookahead(pageDataConsumer);
+			list(client, apiEndpoint, "issues", server.getListConcurrency(), new PageDataConsumer() {
 
-			// create OneDev links from Redmine relations
-			List<LinkSpec> linkSpecs = new ArrayList<>();
-			List<IssueLink> issueLinks = new ArrayList<>();
-			Map<String, LinkSpec> relationTypeMapping = new HashMap<>();
-			LinkSpecManager linkSpecManager = OneDev.getInstance(LinkSpecManager.class);
-			for (JsonNode relationNode : redmineRelations.values()) {
-				long issue_id = relationNode.get("issue_id").asLong();
-				long issue_to_id = relationNode.get("issue_to_id").asLong();
-				String relation_type = relationNode.get("relation_type").asText();
-
-				Issue source = issuesMap.get(issue_to_id);
-				Issue target = issuesMap.get(issue_id);
-
-				if (source == null) {
-					resultNotes.add(String.format(
-							"Relation to unknown issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
-							issue_to_id, server.getApiEndpoint("/issues/" + issue_id), issue_id));
-					continue;
-				}
-				if (target == null) {
-					resultNotes.add(String.format(
-							"Relation to unknown issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
-							issue_id, server.getApiEndpoint("/issues/" + issue_to_id), issue_to_id));
-					continue;
-				}
-
-				// create OneDev link specs (if necessary)
-				LinkSpec linkSpec = relationTypeMapping.computeIfAbsent(relation_type, k -> {
-					LinkSpec spec;
-					switch (relation_type) {
-						default:
-						case "relates":    spec = getOrCreateLinkSpec(linkSpecManager, "Related To", true, null, false, 10, linkSpecs); break;
-						case "duplicates": spec = getOrCreateLinkSpec(linkSpecManager, "Duplicated By", true, "Duplicating", true, 11, linkSpecs); break;
-						case "blocks":     spec = getOrCreateLinkSpec(linkSpecManager, "Blocked By", true, "Blocking", true, 12, linkSpecs); break;
-						case "precedes":   spec = getOrCreateLinkSpec(linkSpecManager, "Follows", true, "Precedes", true, 13, linkSpecs); break;
-						case "copied_to":  spec = getOrCreateLinkSpec(linkSpecManager, "Copied From", true, "Copied To", true, 14, linkSpecs); break;
+				@Override
+				public void consume(List<JsonNode> pageData) throws InterruptedException {
+					List<JsonNode> issueNodes = new ArrayList<>();
+					for (JsonNode issueNode: pageData) {
+						// skip issues imported before an interrupted import was resumed
+						if (!importJournal.hasIssue(issueNode.get("id").asLong()))
+							issueNodes.add(issueNode);
 					}
-					return spec;
-				});
+					if (!issueNodes.isEmpty())
+						lookaheadConsumer.consume(issueNodes);
+				}
 
-				IssueLink link = new IssueLink();
-				link.setSource(source);
-				link.setTarget(target);
-				link.setSpec(linkSpec);
-				issueLinks.add(link);
+			}, logger);
+			try {
+				lookaheadConsumer.finish();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
 			}
 
-			// create OneDev links from Redmine subtasks
-			if (!redmineParents.isEmpty()) {
-				LinkSpec linkSpec = getOrCreateLinkSpec(linkSpecManager, "Child Issue", true, "Parent Issue", false, 15, linkSpecs);
-				for (Entry<Long, Long> entry : redmineParents.entrySet()) {
-					Long childNumber = entry.getKey();
-					Long parentNumber = entry.getValue();
+			saveBatch.run();
+
+			int batchSize = importOption.getIssuesPerTransaction();
+			List<PendingLink> pendingLinks = client.getMetrics().time(ImportMetrics.PERSISTENCE, () -> {
+				// create OneDev links from Redmine relations
+				List<LinkSpec> linkSpecs = new ArrayList<>();
+				List<PendingLink> links = new ArrayList<>();
+				Map<String, LinkSpec> relationTypeMapping = new HashMap<>();
+				LinkSpecManager linkSpecManager = OneDev.getInstance(LinkSpecManager.class);
+				RelationTable relations = importJournal.relations;
+				for (int row = 0; row < relations.size(); row++) {
+					long issue_id = relations.getIssueId(row);
+					long issue_to_id = relations.getIssueToId(row);
+					String relation_type = relations.getType(row);
+
+					// links between issues of previous imports already exist
+					if (!isNewIssue(issue_id, importJournal) && !isNewIssue(issue_to_id, importJournal))
+						continue;
 
-					Issue source = issuesMap.get(parentNumber);
-					Issue target = issuesMap.get(childNumber);
+					Long source = findIssue(issue_to_id, importJournal, checkpoint, oneDevProject);
+					Long target = findIssue(issue_id, importJournal, checkpoint, oneDevProject);
 
 					if (source == null) {
 						resultNotes.add(String.format(
-								"Unknown parent issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
-								parentNumber, server.getApiEndpoint("/issues/" + childNumber), childNumber));
+								"Relation to unknown issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
+								issue_to_id, server.getApiEndpoint("/issues/" + issue_id), issue_id));
 						continue;
 					}
 					if (target == null) {
 						resultNotes.add(String.format(
-								"Unknown child issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
-								childNumber, server.getApiEndpoint("/issues/" + parentNumber), parentNumber));
+								"Relation to unknown issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
+								issue_id, server.getApiEndpoint("/issues/" + issue_to_id), issue_to_id));
 						continue;
 					}
 
-					IssueLink link = new IssueLink();
-					link.setSource(source);
-					link.setTarget(target);
-					link.setSpec(linkSpec);
-					issueLinks.add(link);
+					// create OneDev link specs (if necessary)
+					LinkSpec linkSpec = relationTypeMapping.computeIfAbsent(relation_type, k -> {
+						LinkSpec spec;
+						switch (relation_type) {
+							default:
+							case "relates":    spec = getOrCreateLinkSpec(linkSpecManager, "Related To", true, null, false, 10, linkSpecs); break;
+							case "duplicates": spec = getOrCreateLinkSpec(linkSpecManager, "Duplicated By", true, "Duplicating", true, 11, linkSpecs); break;
+							case "blocks":     spec = getOrCreateLinkSpec(linkSpecManager, "Blocked By", true, "Blocking", true, 12, linkSpecs); break;
+							case "precedes":   spec = getOrCreateLinkSpec(linkSpecManager, "Follows", true, "Precedes", true, 13, linkSpecs); break;
+							case "copied_to":  spec = getOrCreateLinkSpec(linkSpecManager, "Copied From", true, "Copied To", true, 14, linkSpecs); break;
+						}
+						return spec;
+					});
+
+					links.add(new PendingLink(source, target, linkSpec));
 				}
-			}
+
+				// create OneDev links from Redmine subtasks
+				if (!importJournal.parents.isEmpty()) {
+					LinkSpec linkSpec = getOrCreateLinkSpec(linkSpecManager, "Child Issue", true, "Parent Issue", false, 15, linkSpecs);
+					importJournal.parents.forEach((childNumber, parentNumber) -> {
+						if (!isNewIssue(childNumber, importJournal) && !isNewIssue(parentNumber, importJournal))
+							return;
+
+						Long source = findIssue(parentNumber, importJournal, checkpoint, oneDevProject);
+						Long target = findIssue(childNumber, importJournal, checkpoint, oneDevProject);
+
+						if (source == null) {
+							resultNotes.add(String.format(
+									"Unknown parent issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
+									parentNumber, server.getApiEndpoint("/issues/" + childNumber), childNumber));
+							return;
+						}
+						if (target == null) {
+							resultNotes.add(String.format(
+									"Unknown child issue #%d in Redmine issue <a href=\"%s\">#%d</a>",
+									childNumber, server.getApiEndpoint("/issues/" + parentNumber), parentNumber));
+							return;
+						}
+
+						links.add(new PendingLink(source, target, linkSpec));
+					});
+				}
+
+				if (!dryRun) {
+					for (LinkSpec linkSpec: linkSpecs)
+						linkSpecManager.save(linkSpec, null, null);
+					for (PendingLink link: links)
+						link.specId = link.spec.getId();
+					commitAndClear(oneDevProject);
+				}
+				return links;
+			});
 
 			if (!dryRun) {
-				ReferenceMigrator migrator = new ReferenceMigrator(Issue.class, issueNumberMappings);
 				Dao dao = OneDev.getInstance(Dao.class);
-				for (Issue issue: issues) {
-					if (issue.getDescription() != null)
+				saveInBatches("links", pendingLinks, batchSize, oneDevProject, client.getMetrics(), journal, bulkWriter, logger, link -> {
+					IssueLink issueLink = new IssueLink();
+					issueLink.setSource(dao.load(Issue.class, link.sourceId));
+					issueLink.setTarget(dao.load(Issue.class, link.targetId));
+					issueLink.setSpec(dao.load(LinkSpec.class, link.specId));
+					bulkWriter.add(issueLink);
+				});
+
+				// replace link change data saved with issue numbers only
+				saveInBatches("linkChanges", journal.linkChanges, batchSize, oneDevProject, client.getMetrics(), journal, bulkWriter, logger, linkChange -> {
+					IssueChange change = dao.load(IssueChange.class, linkChange.id);
+					change.setData(getLinkChangeData(linkChange.name,
+							getIssueSummary(linkChange.from, issueNumberMappings, importJournal, dao),
+							getIssueSummary(linkChange.to, issueNumberMappings, importJournal, dao)));
+				});
+
+				// migrate issue references once numbers of all issues are known
+				AtomicBoolean renumbered = new AtomicBoolean();
+				issueNumberMappings.forEach((oldNumber, newNumber) -> {
+					if (oldNumber != newNumber)
+						renumbered.set(true);
+				});
+				if (renumbered.get()) {
+					ReferenceMigrator migrator = new ReferenceMigrator(Issue.class, issueNumberMappings.asMap());
+					saveInBatches("issueReferences", journal.issuesToMigrate, batchSize, oneDevProject, client.getMetrics(), journal, bulkWriter, logger, issueId -> {
+						Issue issue = dao.load(Issue.class, issueId);
 						issue.setDescription(migrator.migratePrefixed(issue.getDescription(), "#"));
+					});
+					saveInBatches("commentReferences", journal.commentsToMigrate, batchSize, oneDevProject, client.getMetrics(), journal, bulkWriter, logger, commentId -> {
+						IssueComment comment = dao.load(IssueComment.class, commentId);
+						comment.setContent(migrator.migratePrefixed(comment.getContent(), "#"));
+					});
+				}
+			}
 
-					OneDev.getInstance(IssueManager.class).save(issue);
-					for (IssueSchedule schedule: issue.getSchedules())
-						dao.persist(schedule);
-					for (IssueField field: issue.getFields())
-						dao.persist(field);
-					for (IssueComment comment: issue.getComments()) {
-						comment.setContent(migrator.migratePrefixed(comment.getContent(),  "#"));
-						dao.persist(comment);
+			if (!dryRun) {
+				// remember state for next incremental import, unless only some issues were imported
+				ImportCheckpoint newCheckpoint = null;
+				if (importIssueIDs == null) {
+					newCheckpoint = new ImportCheckpoint();
+					newCheckpoint.lastUpdatedOn = DateTimeFormatter.ISO_INSTANT.format(
+							listStartDate.get().toInstant().truncatedTo(ChronoUnit.SECONDS));
+					newCheckpoint.journalIds.addAll(checkpointJournalIds);
+					issueNumberMappings.forEach(newCheckpoint.issueNumbers::put);
+					if (checkpoint != null)
+						newCheckpoint.attachmentNames.putAll(checkpoint.attachmentNames);
+					for (List<ImportJournal.Record> records: journal.attachments.values()) {
+						for (ImportJournal.Record record: records)
+							newCheckpoint.attachmentNames.put(record.id, record.name);
 					}
-					for (IssueChange change: issue.getChanges())
-						dao.persist(change);
-					for (IssueWatch watch: issue.getWatches())
-						dao.persist(watch);
 				}
 
-				for (LinkSpec linkSpec: linkSpecs)
-					linkSpecManager.save(linkSpec, null, null);
-
-				for (IssueLink issueLink: issueLinks)
-					dao.persist(issueLink);
+				// changes made since the last batch are committed with the transaction of the import task
+				ImportCheckpoint checkpointToSave = newCheckpoint;
+				OneDev.getInstance(TransactionManager.class).runAfterCommit(() -> {
+					if (checkpointToSave != null)
+						checkpointToSave.save(server, redmineProjectId, oneDevProject);
+					importJournal.finish();
+					batchDeferredAttachments.start(server);
+				});
+				if (deferredCount.get() != 0) {
+					resultNotes.add(deferredCount.get() + " attachments are being imported in the background. "
+							+ "Until then, issues link to them on Redmine");
+				}
 			}
 
+			conversionStage.log(logger);
+
 			ImportResult result = new ImportResult();
 			result.nonExistentLogins.addAll(nonExistentLogins);
 			result.nonExistentMilestones.addAll(nonExistentMilestones);
@@ -1063,16 +1071,380 @@ public class ImportUtils {
 			result.unmappedIssueFields.addAll(unmappedIssueFields);
 			result.tooLargeAttachments.addAll(tooLargeAttachments);
 			result.notes.addAll(resultNotes);
+			client.getStats().addTo(result);
+			bulkWriter.addTo(result);
+			conversionStage.addTo(result);
+			attachmentPipeline.addTo(result);
+			client.getMetrics().addTo(result);
+
+			File report = client.getMetrics().write(redmineProject + " -> " + oneDevProject.getPath(), result);
+			logger.log("Import metrics written to " + report);
 
 			return result;
 		} finally {
+			monitor.close();
+			if (journal != null)
+				journal.close();
+			if (deferredAttachments != null)
+				deferredAttachments.close();
+			detailFetcher.close();
+			attachmentPipeline.close();
+			conversionStage.close();
 			client.close();
 		}
 	}
 
-	private static void addToFields(String fieldName, String value, Map<String, Input> fields) {
-		if (value != null && !value.isEmpty())
-			fields.put(fieldName, new Input(fieldName, InputSpec.ENUMERATION, Collections.singletonList(value)));
+	/**
+	 * Expands ranges of given comma separated Redmine issue IDs, as accepted by the issue list API.
+	 */
+	@Nullable
+	static String parseImportIssueIDs(@Nullable String importIssueIDs) {
+		if (importIssueIDs == null)
+			return null;
+
+		int count = 0;
+		StringBuilder ids = new StringBuilder();
+		for (String id: importIssueIDs.split(",")) {
+			id = id.trim();
+			if (id.indexOf('-') > 0) {
+				String[] split = id.split("-");
+				if (split.length != 2)
+					throw new ExplicitException("Invalid issue ID range '" + id + "'");
+
+				try {
+					int from = Integer.parseInt(split[0].trim());
+					int to = Integer.parseInt(split[1].trim());
+					for (int i = from; i <= to; i++) {
+						if (ids.length() > 0)
+							ids.append(',');
+						ids.append(i);
+						count++;
+					}
+				} catch (NumberFormatException ex) {
+					throw new ExplicitException("Invalid issue ID range '" + id + "'");
+				}
+			} else {
+				if (ids.length() > 0)
+					ids.append(',');
+				ids.append(id);
+				count++;
+			}
+		}
+		if (count > 300)
+			throw new ExplicitException("Too many issue IDs (max 300).");
+
+		return ids.toString();
+	}
+
+	static String getIssuesApiEndpoint(ImportServer server, String redmineProjectId, @Nullable String updatedSince,
+			@Nullable String importIssueIDs) {
+		return server.getApiEndpoint("/issues.json?project_id=" + redmineProjectId + "&status_id=*&sort=id"
+				+ (updatedSince != null ? "&updated_on=%3E%3D" + updatedSince : "")
+				+ (importIssueIDs != null ? "&issue_id=" + importIssueIDs : ""));
+	}
+
+	/**
+	 * Saves given entries of a phase of the final pass in transactions of given size, recording
+	 * progress in the journal, so that a resumed import continues after the last committed batch.
+	 */
+	private static <T> void saveInBatches(String phase, List<T> entries, int batchSize, Project oneDevProject,
+			ImportMetrics metrics, ImportJournal journal, BulkWriter writer, TaskLogger logger, Consumer<T> saver) {
+		int from = journal.getProgress(phase);
+		while (from < entries.size()) {
+			int to = Math.min(from + batchSize, entries.size());
+			List<T> batch = entries.subList(from, to);
+			metrics.time(ImportMetrics.PERSISTENCE, () -> {
+				batch.forEach(saver);
+				writer.write();
+				journal.add(Collections.singletonList(ImportJournal.progress(phase, to)));
+				journal.sync();
+				commitAndClear(oneDevProject);
+				return null;
+			});
+			journal.commit();
+			from = to;
+		}
+		if (!entries.isEmpty())
+			logger.log("Saved " + entries.size() + " " + phase);
+	}
+
+	/**
+	 * Commits pending changes of the current session, so that saved batches are kept if the
+	 * import fails or OneDev stops, and detaches all its entities, so that saved entities do not
+	 * pile up in memory. An import task runs in a transaction, which is committed and begun
+	 * again; otherwise changes are written in a transaction of their own. Given project is
+	 * attached again, as saving issues reads its lazy associations. Users and milestones are only
+	 * referenced by saved entities, which is fine while detached.
+	 */
+	private static void commitAndClear(Project oneDevProject) {
+		Session session = OneDev.getInstance(Dao.class).getSession();
+		Transaction transaction = session.getTransaction();
+		if (transaction.isActive()) {
+			session.flush();
+			transaction.commit();
+			session.clear();
+			transaction.begin();
+		} else {
+			OneDev.getInstance(TransactionManager.class).run(session::flush);
+			session.clear();
+		}
+		session.buildLockRequest(LockOptions.NONE).lock(oneDevProject);
+	}
+
+	/**
+	 * Saves given batch of issues and adds the journal records of them. Issues are saved one by
+	 * one, while their schedules, fields, comments, changes and watches are inserted in bulk.
+	 * Cross-issue work is deferred until all issues are saved: link changes are saved with issue
+	 * numbers only, and issues and comments which may contain issue references are recorded for
+	 * migration.
+	 */
+	private static void saveIssues(List<Issue> issues, Map<Issue, Long> redmineIssueIds,
+			Map<Issue, Long> updatedIssues, LongLongMap issueNumberMappings,
+			BulkWriter writer, List<ImportJournal.Record> records) {
+		Dao dao = OneDev.getInstance(Dao.class);
+		Map<IssueChange, TempIssueLinkChangeData> linkChanges = new IdentityHashMap<>();
+		List<Issue> savedIssues = new ArrayList<>();
+		for (Issue issue: issues) {
+			for (IssueChange change: issue.getChanges()) {
+				if (change.getData() instanceof TempIssueLinkChangeData) {
+					TempIssueLinkChangeData data = (TempIssueLinkChangeData) change.getData();
+					linkChanges.put(change, data);
+					change.setData(getLinkChangeData(data.linkName,
+							getIssueSummary(toLong(data.oldValue), issueNumberMappings, null, dao),
+							getIssueSummary(toLong(data.newValue), issueNumberMappings, null, dao)));
+				}
+			}
+
+			Long existingIssueId = updatedIssues.get(issue);
+			if (existingIssueId != null) {
+				Issue existingIssue = dao.load(Issue.class, existingIssueId);
+				updateIssue(existingIssue, issue, writer);
+				savedIssues.add(existingIssue);
+			} else {
+				OneDev.getInstance(IssueManager.class).save(issue);
+				issue.getSchedules().forEach(writer::add);
+				issue.getFields().forEach(writer::add);
+				issue.getComments().forEach(writer::add);
+				issue.getChanges().forEach(writer::add);
+				issue.getWatches().forEach(writer::add);
+				savedIssues.add(issue);
+			}
+		}
+		writer.write();
+
+		for (int i = 0; i < issues.size(); i++) {
+			Issue issue = issues.get(i);
+			Issue savedIssue = savedIssues.get(i);
+			records.add(ImportJournal.issue(redmineIssueIds.get(issue), savedIssue.getNumber(),
+					savedIssue.getId(), updatedIssues.containsKey(issue)));
+			if (savedIssue.getDescription() != null && savedIssue.getDescription().contains("#"))
+				records.add(ImportJournal.migrateIssue(savedIssue.getId()));
+			for (IssueComment comment: issue.getComments()) {
+				// comments before the checkpoint of an incremental import are not saved
+				if (comment.getId() != null && comment.getContent().contains("#"))
+					records.add(ImportJournal.migrateComment(comment.getId()));
+			}
+		}
+		for (Entry<IssueChange, TempIssueLinkChangeData> entry: linkChanges.entrySet()) {
+			if (entry.getKey().getId() != null) {
+				TempIssueLinkChangeData data = entry.getValue();
+				records.add(ImportJournal.linkChange(entry.getKey().getId(), data.linkName,
+						toLong(data.oldValue), toLong(data.newValue)));
+			}
+		}
+	}
+
+	/**
+	 * Waits for downloads of given attachments, stores them as attachments of given issue,
+	 * rewrites references to them in comments and returns the issue description linking them.
+	 * Attachments imported later are linked on Redmine and added to given deferred entries.
+	 */
+	@Nullable
+	private static String saveAttachments(Project oneDevProject, Issue issue, PendingAttachments pending,
+			AttachmentPipeline attachmentPipeline, ImportJournal importJournal,
+			List<DeferredAttachmentImport.Entry> deferredEntries) {
+		String issueUUID = issue.getUUID();
+		AttachmentLinkRewriter rewriter = new AttachmentLinkRewriter();
+		StringBuilder attachmentsLinks = new StringBuilder();
+		for (PendingAttachment pendingAttachment: pending.attachments) {
+			RedmineIssueDetail.Attachment attachment = pendingAttachment.attachment;
+			String attachmentName = attachment.filename;
+			String oneDevAttachmentName = pendingAttachment.oneDevName;
+			String attachmentUrl;
+			if (oneDevAttachmentName == null && pendingAttachment.download == null) {
+				// linked on Redmine until imported in the background
+				deferredEntries.add(DeferredAttachmentImport.entry(oneDevProject, issue.getNumber(), attachment));
+				attachmentUrl = attachment.contentUrl;
+			} else if (oneDevAttachmentName == null) {
+				File file = AttachmentPipeline.await(pendingAttachment.download);
+				try (InputStream is = new FileInputStream(file)) {
+					oneDevAttachmentName = oneDevProject.saveAttachment(issueUUID, attachmentName, is);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				} finally {
+					attachmentPipeline.release(file);
+				}
+				importJournal.add(Collections.singletonList(ImportJournal.attachment(
+						pending.redmineIssueId, attachment.id, issueUUID, oneDevAttachmentName)));
+				attachmentUrl = oneDevProject.getAttachmentUrlPath(issueUUID, oneDevAttachmentName);
+			} else {
+				attachmentUrl = oneDevProject.getAttachmentUrlPath(issueUUID, oneDevAttachmentName);
+			}
+			rewriter.add(attachmentName, attachmentUrl);
+
+			String description = attachment.description;
+			attachmentsLinks.append('[').append(attachmentName).append("](").append(attachmentUrl).append(')');
+			if (!description.isEmpty())
+				attachmentsLinks.append(" - ").append(description);
+			attachmentsLinks.append(" (").append(attachment.authorName)
+					.append(", ").append(attachment.createdOn).append(")\n");
+		}
+
+		for (IssueComment comment: pending.comments)
+			comment.setContent(rewriter.rewrite(comment.getContent()));
+		return buildDescription(pending.extraIssueInfo, rewriter.rewrite(pending.description), attachmentsLinks);
+	}
+
+	/**
+	 * Assembles the Markdown of an issue description in a single buffer: a table of extra issue
+	 * information, the converted description and links to attachments.
+	 *
+	 * @param attachmentsLinks
+	 * 			links to uploaded attachments, or <tt>null</tt> if attachments were not processed
+	 */
+	@Nullable
+	private static String buildDescription(Map<String, String> extraIssueInfo, @Nullable String description,
+			@Nullable StringBuilder attachmentsLinks) {
+		boolean hasLinks = attachmentsLinks != null && attachmentsLinks.length() != 0;
+		if (attachmentsLinks != null && description != null && description.isEmpty())
+			description = null;
+		if (extraIssueInfo.isEmpty() && !hasLinks)
+			return description;
+
+		int capacity = (description != null ? description.length() : 0) + (hasLinks ? attachmentsLinks.length() + 32 : 0);
+		for (Map.Entry<String, String> entry: extraIssueInfo.entrySet())
+			capacity += entry.getKey().length() + entry.getValue().length() + 6;
+		StringBuilder builder = new StringBuilder(capacity);
+		if (!extraIssueInfo.isEmpty()) {
+			builder.append("|");
+			for (String key: extraIssueInfo.keySet())
+				builder.append(key).append("|");
+			builder.append("\n|");
+			for (int i = 0; i < extraIssueInfo.size(); i++)
+				builder.append("---|");
+			builder.append("\n|");
+			for (String value: extraIssueInfo.values())
+				builder.append(value).append("|");
+			if (description != null || hasLinks)
+				builder.append("\n\n");
+		}
+		if (description != null)
+			builder.append(description);
+		if (hasLinks)
+			builder.append("\n\n**Attachments:**\n").append(attachmentsLinks);
+		return builder.toString();
+	}
+
+	@Nullable
+	private static Long toLong(@Nullable String value) {
+		return (value != null) ? Long.valueOf(value) : null;
+	}
+
+	/**
+	 * Gets summary of given Redmine issue used in link change data. Titles are only included
+	 * for issues imported by this import and if the journal is specified.
+	 */
+	@Nullable
+	private static String getIssueSummary(@Nullable Long redmineIssueId, LongLongMap issueNumberMappings,
+			@Nullable ImportJournal journal, Dao dao) {
+		if (redmineIssueId == null)
+			return null;
+		String summary = "#" + issueNumberMappings.get(redmineIssueId, redmineIssueId);
+		if (journal != null && journal.hasIssue(redmineIssueId))
+			summary += " - " + dao.load(Issue.class, journal.getIssueId(redmineIssueId)).getTitle();
+		return summary;
+	}
+
+	@Nullable
+	private static IssueChangeData getLinkChangeData(String linkName, @Nullable String oldIssueSummary,
+			@Nullable String newIssueSummary) {
+		if (oldIssueSummary != null && newIssueSummary != null)
+			return new IssueLinkChangeData(linkName, oldIssueSummary, newIssueSummary);
+		else if (newIssueSummary != null)
+			return new IssueLinkAddData(linkName, newIssueSummary);
+		else if (oldIssueSummary != null)
+			return new IssueLinkRemoveData(linkName, oldIssueSummary);
+		else
+			return null;
+	}
+
+	/**
+	 * Updates an issue of a previous import with data of given newly mapped issue. Fields,
+	 * schedules and watches are replaced, while comments and changes, only mapped for journals
+	 * not added before, are added.
+	 */
+	private static void updateIssue(Issue existingIssue, Issue issue, BulkWriter writer) {
+		existingIssue.setTitle(issue.getTitle());
+		existingIssue.setDescription(issue.getDescription());
+		existingIssue.setState(issue.getState());
+		existingIssue.setLastUpdate(issue.getLastUpdate());
+
+		existingIssue.getFields().clear();
+		for (IssueField field: issue.getFields()) {
+			field.setIssue(existingIssue);
+			existingIssue.getFields().add(field);
+		}
+		OneDev.getInstance(IssueFieldManager.class).saveFields(existingIssue);
+
+		Dao dao = OneDev.getInstance(Dao.class);
+		existingIssue.getSchedules().forEach(dao::remove);
+		existingIssue.getSchedules().clear();
+		for (IssueSchedule schedule: issue.getSchedules()) {
+			schedule.setIssue(existingIssue);
+			writer.add(schedule);
+		}
+
+		existingIssue.getWatches().forEach(dao::remove);
+		existingIssue.getWatches().clear();
+		for (IssueWatch watch: issue.getWatches()) {
+			watch.setIssue(existingIssue);
+			writer.add(watch);
+		}
+
+		for (IssueComment comment: issue.getComments()) {
+			comment.setIssue(existingIssue);
+			writer.add(comment);
+			existingIssue.setCommentCount(existingIssue.getCommentCount() + 1);
+		}
+		for (IssueChange change: issue.getChanges()) {
+			change.setIssue(existingIssue);
+			writer.add(change);
+		}
+
+		OneDev.getInstance(IssueManager.class).save(existingIssue);
+	}
+
+	private static boolean isNewIssue(long redmineIssueId, ImportJournal journal) {
+		return journal.hasIssue(redmineIssueId) && !journal.isUpdatedIssue(redmineIssueId);
+	}
+
+	/**
+	 * Finds OneDev issue of given Redmine issue ID, either imported by this import or by a previous one.
+	 *
+	 * @return ID of the OneDev issue, <tt>0</tt> for issues of a dry run, or <tt>null</tt> if not found
+	 */
+	@Nullable
+	private static Long findIssue(long redmineIssueId, ImportJournal journal,
+			@Nullable ImportCheckpoint checkpoint, Project oneDevProject) {
+		if (journal.hasIssue(redmineIssueId))
+			return journal.getIssueId(redmineIssueId);
+		if (checkpoint != null) {
+			Long number = checkpoint.issueNumbers.get(redmineIssueId);
+			Issue issue = (number != null) ? OneDev.getInstance(IssueManager.class).find(oneDevProject, number) : null;
+			if (issue != null)
+				return issue.getId();
+		}
+		return null;
 	}
 
 	private static LinkSpec getOrCreateLinkSpec(LinkSpecManager linkSpecManager, String name, boolean multiple,
@@ -1098,7 +1470,7 @@ public class ImportUtils {
 
 	static void importVersions(ImportServer server, String redmineProject, Project oneDevProject,
 			boolean dryRun, TaskLogger logger) {
-		Client client = server.newClient();
+		RedmineClient client = new RedmineClient(server);
 		try {
 			String redmineProjectId = getRedmineProjectId(redmineProject);
 
@@ -1121,7 +1493,7 @@ public class ImportUtils {
 				String wikiPageId = versionNode.get("name").asText().replace(' ', '_').replace(".", "");
 				apiEndpoint = server.getApiEndpoint("/projects/" + redmineProjectId + "/wiki/" + wikiPageId +".json");
 				try {
-					JsonNode wikiPageNode = JerseyUtils.get(client, apiEndpoint, logger).get("wiki_page");
+					JsonNode wikiPageNode = client.get(apiEndpoint, logger).get("wiki_page");
 					String wikiText = wikiPageNode.get("text").asText();
 					if (wikiText != null) {
 						String description = milestone.getDescription();
@@ -1144,7 +1516,7 @@ public class ImportUtils {
 
 	private static void importIssueCategories(ImportServer server, String redmineProject,
 			IssueImportOption importOption, boolean dryRun, TaskLogger logger) {
-		Client client = server.newClient();
+		RedmineClient client = new RedmineClient(server);
 		try {
 			String redmineProjectId = getRedmineProjectId(redmineProject);
 			String categoryIssueField = importOption.getCategoryIssueField();
@@ -1186,13 +1558,28 @@ public class ImportUtils {
 		}
 	}
 
+	/**
+	 * Gets a directory below the OneDev site directory to keep import state across imports.
+	 */
+	static File getWorkDir(String name) {
+		File dir = new File(new File(Bootstrap.getSiteDir(), "redmine-import"), name);
+		if (!dir.exists() && !dir.mkdirs())
+			throw new RuntimeException("Unable to create directory: " + dir);
+		return dir;
+	}
+
 	static GlobalIssueSetting getIssueSetting() {
 		return OneDev.getInstance(SettingManager.class).getIssueSetting();
 	}
 
-	static List<JsonNode> list(Client client, String apiEndpoint, String dataNodeName, TaskLogger logger) {
+	static List<JsonNode> list(RedmineClient client, String apiEndpoint, String dataNodeName, TaskLogger logger) {
+		return list(client, apiEndpoint, dataNodeName, 1, logger);
+	}
+
+	static List<JsonNode> list(RedmineClient client, String apiEndpoint, String dataNodeName, int concurrency,
+			TaskLogger logger) {
 		List<JsonNode> result = new ArrayList<>();
-		list(client, apiEndpoint, dataNodeName, new PageDataConsumer() {
+		list(client, apiEndpoint, dataNodeName, concurrency, new PageDataConsumer() {
 
 			@Override
 			public void consume(List<JsonNode> pageData) {
@@ -1203,8 +1590,18 @@ public class ImportUtils {
 		return result;
 	}
 
-	static void list(Client client, String apiEndpoint, String dataNodeName, PageDataConsumer pageDataConsumer,
+	static void list(RedmineClient client, String apiEndpoint, String dataNodeName, PageDataConsumer pageDataConsumer,
 			TaskLogger logger) {
+		list(client, apiEndpoint, dataNodeName, 1, pageDataConsumer, logger);
+	}
+
+	/**
+	 * Lists all pages of given endpoint. The first page is always fetched alone to get the total count.
+	 * If <tt>concurrency</tt> is greater than one, remaining pages are then requested with at most
+	 * <tt>concurrency</tt> pages in flight. Pages are always passed to the consumer in offset order.
+	 */
+	static void list(RedmineClient client, String apiEndpoint, String dataNodeName, int concurrency,
+			PageDataConsumer pageDataConsumer, TaskLogger logger) {
 		URI uri;
 		try {
 			uri = new URIBuilder(apiEndpoint).build();
@@ -1212,38 +1609,160 @@ public class ImportUtils {
 			throw new RuntimeException(e);
 		}
 
-		int offset = 0;
-		while (true) {
-			try {
-				URIBuilder builder = new URIBuilder(uri);
-				if (offset > 0)
-					builder.addParameter("offset", String.valueOf(offset));
-				builder.addParameter("limit", String.valueOf(PER_PAGE));
-				List<JsonNode> pageData = new ArrayList<>();
-				JsonNode resultNode = JerseyUtils.get(client, builder.build().toString(), logger);
-				JsonNode dataNode = resultNode.get(dataNodeName);
-				for (JsonNode each: dataNode)
-					pageData.add(each);
-				pageDataConsumer.consume(pageData);
-				JsonNode totalCountNode = resultNode.get("total_count");
-				if (totalCountNode == null)
-					break;
-				int totalCount = totalCountNode.asInt();
-				if (offset + pageData.size() >= totalCount)
-					break;
-				offset += pageData.size();
-			} catch (URISyntaxException|InterruptedException e) {
-				throw new RuntimeException(e);
+		try {
+			JsonNode resultNode = getPage(client, uri, 0, logger);
+			List<JsonNode> pageData = getPageData(resultNode, dataNodeName);
+			pageDataConsumer.consume(pageData);
+
+			JsonNode totalCountNode = resultNode.get("total_count");
+			if (totalCountNode == null)
+				return;
+			int totalCount = totalCountNode.asInt();
+			int pageSize = pageData.size();
+			if (pageSize == 0 || pageSize >= totalCount)
+				return;
+
+			if (concurrency <= 1) {
+				int offset = pageSize;
+				while (offset < totalCount) {
+					pageData = getPageData(getPage(client, uri, offset, logger), dataNodeName);
+					pageDataConsumer.consume(pageData);
+					if (pageData.isEmpty())
+						break;
+					offset += pageData.size();
+				}
+			} else {
+				ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+						new ThreadFactoryBuilder().setNameFormat("redmine-import-pages-%d").setDaemon(true).build());
+				try {
+					Deque<Future<List<JsonNode>>> pendingPages = new ArrayDeque<>();
+					int nextOffset = pageSize;
+					while (nextOffset < totalCount || !pendingPages.isEmpty()) {
+						while (nextOffset < totalCount && pendingPages.size() < concurrency) {
+							int offset = nextOffset;
+							pendingPages.add(executor.submit(
+									() -> getPageData(getPage(client, uri, offset, logger), dataNodeName)));
+							nextOffset += pageSize;
+						}
+						pageDataConsumer.consume(pendingPages.poll().get());
+					}
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					else
+						throw new RuntimeException(e.getCause());
+				} finally {
+					executor.shutdownNow();
+				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
 		}
 	}
 
+	static JsonNode getPage(RedmineClient client, URI uri, int offset, TaskLogger logger) {
+		String apiEndpoint;
+		try {
+			URIBuilder builder = new URIBuilder(uri);
+			if (offset > 0)
+				builder.addParameter("offset", String.valueOf(offset));
+			builder.addParameter("limit", String.valueOf(PER_PAGE));
+			apiEndpoint = builder.build().toString();
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+		return client.getMetrics().time(ImportMetrics.LIST, () -> client.get(apiEndpoint, logger));
+	}
+
+	static List<JsonNode> getPageData(JsonNode resultNode, String dataNodeName) {
+		List<JsonNode> pageData = new ArrayList<>();
+		for (JsonNode each: resultNode.get(dataNodeName))
+			pageData.add(each);
+		return pageData;
+	}
+
 	static String getRedmineProjectId(String redmineProject) {
 		int sep = redmineProject.lastIndexOf(':');
 		return redmineProject.substring(sep + 1);
 	}
 
-	private static class TempIssueLinkChangeData extends IssueLinkChangeData {
+	/**
+	 * Attachments of an issue being downloaded, with the issue description and comments to link them from.
+	 */
+	private static class PendingAttachments {
+
+		final long redmineIssueId;
+
+		final Map<String, String> extraIssueInfo;
+
+		@Nullable
+		final String description;
+
+		final List<PendingAttachment> attachments;
+
+		/**
+		 * Comments of the issue, which may refer to attachments too.
+		 */
+		final List<IssueComment> comments = new ArrayList<>();
+
+		PendingAttachments(long redmineIssueId, Map<String, String> extraIssueInfo, @Nullable String description,
+				List<PendingAttachment> attachments) {
+			this.redmineIssueId = redmineIssueId;
+			this.extraIssueInfo = extraIssueInfo;
+			this.description = description;
+			this.attachments = attachments;
+		}
+
+	}
+
+	private static class PendingAttachment {
+
+		final RedmineIssueDetail.Attachment attachment;
+
+		/**
+		 * Name of the attachment in OneDev if it was stored by an interrupted import.
+		 */
+		@Nullable
+		final String oneDevName;
+
+		/**
+		 * Download of the attachment, or <tt>null</tt> if it was stored before or is imported later.
+		 */
+		@Nullable
+		final CompletableFuture<File> download;
+
+		PendingAttachment(RedmineIssueDetail.Attachment attachment, @Nullable String oneDevName,
+				@Nullable CompletableFuture<File> download) {
+			this.attachment = attachment;
+			this.oneDevName = oneDevName;
+			this.download = download;
+		}
+
+	}
+
+	/**
+	 * Link to be created in the final pass, referring to issues and link spec by ID.
+	 */
+	private static class PendingLink {
+
+		final Long sourceId;
+
+		final Long targetId;
+
+		final LinkSpec spec;
+
+		Long specId;
+
+		PendingLink(Long sourceId, Long targetId, LinkSpec spec) {
+			this.sourceId = sourceId;
+			this.targetId = targetId;
+			this.spec = spec;
+		}
+
+	}
+
+	static class TempIssueLinkChangeData extends IssueLinkChangeData {
 
 		private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,149 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.onedev.commons.utils.TaskLogger;
+import io.onedev.server.util.JerseyUtils.PageDataConsumer;
+
+/**
+ * Fetches and decodes Redmine issue detail documents (relations, watchers, attachments and journals)
+ * with a bounded worker pool, so that details of upcoming issues are downloaded while
+ * current issues are being mapped. Texts of fetched details are converted by the
+ * {@link TextConversionStage}.
+ */
+class IssueDetailFetcher implements AutoCloseable {
+
+	private final ImportServer server;
+
+	private final RedmineClient client;
+
+	private final TaskLogger logger;
+
+	private final ExecutorService executor;
+
+	private final TextConversionStage conversionStage;
+
+	// read by the import monitor
+	private final Map<Long, CompletableFuture<RedmineIssueDetail>> pendingDetails = new ConcurrentHashMap<>();
+
+	private final Map<Long, String> updatedOns = new HashMap<>();
+
+	IssueDetailFetcher(ImportServer server, RedmineClient client, int concurrency,
+			TextConversionStage conversionStage, TaskLogger logger) {
+		this.server = server;
+		this.client = client;
+		this.conversionStage = conversionStage;
+		this.logger = logger;
+		executor = Executors.newFixedThreadPool(Math.max(1, concurrency),
+				new ThreadFactoryBuilder().setNameFormat("redmine-import-details-%d").setDaemon(true).build());
+	}
+
+	static String getIssueEndpoint(ImportServer server, long issueId) {
+		return server.getApiEndpoint("/issues/" + issueId + ".json?include=relations,watchers,attachments,journals");
+	}
+
+	/**
+	 * Starts fetching details of given issues in the background.
+	 */
+	void prefetch(List<JsonNode> issueNodes) {
+		for (JsonNode issueNode: issueNodes) {
+			long issueId = issueNode.get("id").asLong();
+			JsonNode updatedOnNode = issueNode.get("updated_on");
+			if (updatedOnNode != null) {
+				synchronized (updatedOns) {
+					updatedOns.put(issueId, updatedOnNode.asText());
+				}
+			}
+			pendingDetails.computeIfAbsent(issueId, k -> conversionStage.convertAsync(issueId,
+					CompletableFuture.supplyAsync(() -> fetch(issueId), executor)));
+		}
+	}
+
+	/**
+	 * Gets details of given issue with converted texts, waiting for a prefetch if there is one.
+	 */
+	RedmineIssueDetail get(long issueId) throws InterruptedException {
+		CompletableFuture<RedmineIssueDetail> future = pendingDetails.remove(issueId);
+		if (future == null)
+			return conversionStage.convert(issueId, fetch(issueId));
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Number of prefetched issue details, being fetched or waiting to be mapped.
+	 */
+	int getQueueDepth() {
+		return pendingDetails.size();
+	}
+
+	private RedmineIssueDetail fetch(long issueId) {
+		// cached details are still valid if issue has not been updated since
+		String updatedOn;
+		synchronized (updatedOns) {
+			updatedOn = updatedOns.remove(issueId);
+		}
+		return client.getMetrics().time(ImportMetrics.DETAILS,
+				() -> client.get(getIssueEndpoint(server, issueId), updatedOn, logger, RedmineIssueDetail::read));
+	}
+
+	/**
+	 * Wraps given consumer so that each page is passed on only after the next page has arrived
+	 * and its details are being prefetched. Call {@link LookaheadConsumer#finish()} after listing
+	 * to pass on the last page.
+	 */
+	LookaheadConsumer lookahead(PageDataConsumer consumer) {
+		return new LookaheadConsumer(consumer);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	class LookaheadConsumer implements PageDataConsumer {
+
+		private final PageDataConsumer consumer;
+
+		private List<JsonNode> heldPage;
+
+		LookaheadConsumer(PageDataConsumer consumer) {
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void consume(List<JsonNode> pageData) throws InterruptedException {
+			prefetch(pageData);
+			List<JsonNode> page = heldPage;
+			heldPage = new ArrayList<>(pageData);
+			if (page != null)
+				consumer.consume(page);
+		}
+
+		void finish() throws InterruptedException {
+			List<JsonNode> page = heldPage;
+			heldPage = null;
+			if (page != null)
+				consumer.consume(page);
+		}
+
+	}
+
+}
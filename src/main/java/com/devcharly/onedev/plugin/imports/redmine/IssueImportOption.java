@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.Nullable;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 
 import org.hibernate.validator.constraints.NotEmpty;
 
@@ -23,8 +25,18 @@ public class IssueImportOption implements Serializable {
 
 	private boolean importIssues = true;
 	private boolean importVersions;
+	private boolean estimateOnly;
+	private int estimateSamplePercent = 5;
 	private boolean convertTextileToMarkdown;
+	private boolean regexTextileConverter;
+	private int maxConvertedTextLength = 1000000;
+	private int textConversionTimeout = 5000;
+	private int conversionCacheMaxSize;
 	private boolean useExistingIssueIDs = true;
+	private boolean incremental;
+	private boolean resume;
+	private int issuesPerTransaction = ImportUtils.PER_PAGE;
+	private boolean deferAttachments;
 
 	private String importIssueIDs;
 
@@ -60,6 +72,29 @@ public class IssueImportOption implements Serializable {
 		this.importVersions = importVersions;
 	}
 
+	@Editable(order=205, name="Only estimate import", description="If enabled, nothing is imported. Details "
+			+ "of a sample of issues are fetched instead, to estimate the number of requests, attachment and "
+			+ "history volume, and duration of the import")
+	public boolean isEstimateOnly() {
+		return estimateOnly;
+	}
+
+	public void setEstimateOnly(boolean estimateOnly) {
+		this.estimateOnly = estimateOnly;
+	}
+
+	@Editable(order=206, name="Sampled issues (%)", description="Percentage of issues whose details are "
+			+ "fetched to estimate the import")
+	@Min(1)
+	@Max(100)
+	public int getEstimateSamplePercent() {
+		return estimateSamplePercent;
+	}
+
+	public void setEstimateSamplePercent(int estimateSamplePercent) {
+		this.estimateSamplePercent = estimateSamplePercent;
+	}
+
 	@Editable(order=210)
 	public boolean isConvertTextileToMarkdown() {
 		return convertTextileToMarkdown;
@@ -69,6 +104,54 @@ public class IssueImportOption implements Serializable {
 		this.convertTextileToMarkdown = convertTextileToMarkdown;
 	}
 
+	@Editable(order=215, name="Use regex Textile converter", description="If enabled, Textile is converted "
+			+ "to Markdown by applying one regular expression after the other to the whole text, as in "
+			+ "previous versions. Both converters produce the same Markdown, the default one is faster")
+	public boolean isRegexTextileConverter() {
+		return regexTextileConverter;
+	}
+
+	public void setRegexTextileConverter(boolean regexTextileConverter) {
+		this.regexTextileConverter = regexTextileConverter;
+	}
+
+	@Editable(order=216, name="Maximum text length to convert", description="Descriptions and notes longer "
+			+ "than this number of characters are not converted from Textile to Markdown, but imported verbatim "
+			+ "as a code block")
+	@Min(1)
+	public int getMaxConvertedTextLength() {
+		return maxConvertedTextLength;
+	}
+
+	public void setMaxConvertedTextLength(int maxConvertedTextLength) {
+		this.maxConvertedTextLength = maxConvertedTextLength;
+	}
+
+	@Editable(order=217, name="Text conversion timeout", description="Maximum time in milliseconds to convert "
+			+ "a description or note from Textile to Markdown (0 for no limit). Texts taking longer are imported "
+			+ "verbatim as a code block")
+	@Min(0)
+	public int getTextConversionTimeout() {
+		return textConversionTimeout;
+	}
+
+	public void setTextConversionTimeout(int textConversionTimeout) {
+		this.textConversionTimeout = textConversionTimeout;
+	}
+
+	@Editable(order=218, name="Conversion cache size (MB)", description="If not <tt>0</tt>, texts converted from "
+			+ "Textile to Markdown are also cached on disk, so that later imports (for instance a real run after "
+			+ "a dry run) do not convert unchanged texts again after a restart. Note that cached texts are stored "
+			+ "unencrypted below the OneDev site directory")
+	@Min(0)
+	public int getConversionCacheMaxSize() {
+		return conversionCacheMaxSize;
+	}
+
+	public void setConversionCacheMaxSize(int conversionCacheMaxSize) {
+		this.conversionCacheMaxSize = conversionCacheMaxSize;
+	}
+
 	@Editable(order=220, name="Use existing issue IDs",
 			description = "If enabled, use existing Redmine issue IDs for OneDev issues."
 					+ " If disabled, imported issues (may) get different IDs.")
@@ -80,6 +163,54 @@ public class IssueImportOption implements Serializable {
 		this.useExistingIssueIDs = useExistingIssueIDs;
 	}
 
+	@Editable(order=230, name="Incremental import", description="If enabled, only Redmine issues created or "
+			+ "updated since the previous import into this project are imported. Issues imported before are updated "
+			+ "with their new title, description, state, fields and history")
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	@Editable(order=240, name="Resume interrupted import", description="If enabled, an import into this project "
+			+ "which was interrupted (for instance by a restart of OneDev) continues after the last committed batch "
+			+ "of issues, reusing the attachments it downloaded. If disabled, progress of an interrupted import is "
+			+ "discarded")
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	@Editable(order=245, name="Issues per transaction", description="Imported issues are saved in batches of "
+			+ "this size, each committed on its own and then dropped from memory. Smaller batches use less memory "
+			+ "and hold database locks shorter, while larger batches save issues faster. An interrupted import "
+			+ "resumes after the last committed batch")
+	@Min(1)
+	public int getIssuesPerTransaction() {
+		return issuesPerTransaction;
+	}
+
+	public void setIssuesPerTransaction(int issuesPerTransaction) {
+		this.issuesPerTransaction = issuesPerTransaction;
+	}
+
+	@Editable(order=247, name="Import attachments later", description="If enabled, issues are imported "
+			+ "without waiting for their attachments, which link to Redmine until they are imported in the "
+			+ "background. Attachments not imported when OneDev stops are imported after the next import into "
+			+ "this project")
+	public boolean isDeferAttachments() {
+		return deferAttachments;
+	}
+
+	public void setDeferAttachments(boolean deferAttachments) {
+		this.deferAttachments = deferAttachments;
+	}
+
 	@Editable(order=250, name="Import Issue IDs", description="Redmine issue IDs to import (all if empty; multiple IDs separated by <code>,</code>; ID range separated by <code>-</code>; maximum 300 issues).")
 	public String getImportIssueIDs() {
 		return importIssueIDs;
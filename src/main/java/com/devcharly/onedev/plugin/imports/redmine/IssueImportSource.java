@@ -7,8 +7,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import javax.ws.rs.client.Client;
-
 import org.hibernate.validator.constraints.NotEmpty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +44,7 @@ public class IssueImportSource implements Serializable {
 
 		ImportServer server = WicketUtils.getPage().getMetaData(ImportServer.META_DATA_KEY);
 
-		Client client = server.newClient();
+		RedmineClient client = new RedmineClient(server);
 		try {
 			String apiEndpoint = server.getApiEndpoint("/projects.json");
 			TaskLogger logger = new TaskLogger() {
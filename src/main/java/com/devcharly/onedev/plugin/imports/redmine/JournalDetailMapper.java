@@ -0,0 +1,212 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.model.Milestone;
+import io.onedev.server.model.User;
+import io.onedev.server.model.support.inputspec.InputSpec;
+import io.onedev.server.model.support.issue.changedata.IssueChangeData;
+import io.onedev.server.model.support.issue.changedata.IssueFieldChangeData;
+import io.onedev.server.model.support.issue.changedata.IssueMilestoneAddData;
+import io.onedev.server.model.support.issue.changedata.IssueMilestoneChangeData;
+import io.onedev.server.model.support.issue.changedata.IssueMilestoneRemoveData;
+import io.onedev.server.model.support.issue.changedata.IssueStateChangeData;
+import io.onedev.server.model.support.issue.changedata.IssueTitleChangeData;
+import io.onedev.server.util.Input;
+
+/**
+ * Maps details of a Redmine journal ("History") to OneDev issue change data. Changes of
+ * fields are combined into one {@link IssueFieldChangeData}, which follows the other changes.
+ */
+class JournalDetailMapper {
+
+	private final IssueImportOption importOption;
+
+	private final Map<String, String> userId2nameMap;
+	private final Map<String, String> versionId2nameMap;
+	private final Map<String, String> statusId2nameMap;
+	private final Map<String, String> trackerId2nameMap;
+	private final Map<String, String> priorityId2nameMap;
+	private final Map<String, String> categoryId2nameMap;
+	private final Map<String, String> fieldId2nameMap;
+
+	private final Function<String, User> userResolver;
+
+	/**
+	 * @param userResolver
+	 * 			gets OneDev user of given Redmine user ID, or <tt>null</tt> if there is none
+	 */
+	JournalDetailMapper(IssueImportOption importOption, Map<String, String> userId2nameMap,
+			Map<String, String> versionId2nameMap, Map<String, String> statusId2nameMap,
+			Map<String, String> trackerId2nameMap, Map<String, String> priorityId2nameMap,
+			Map<String, String> categoryId2nameMap, Map<String, String> fieldId2nameMap,
+			Function<String, User> userResolver) {
+		this.importOption = importOption;
+		this.userId2nameMap = userId2nameMap;
+		this.versionId2nameMap = versionId2nameMap;
+		this.statusId2nameMap = statusId2nameMap;
+		this.trackerId2nameMap = trackerId2nameMap;
+		this.priorityId2nameMap = priorityId2nameMap;
+		this.categoryId2nameMap = categoryId2nameMap;
+		this.fieldId2nameMap = fieldId2nameMap;
+		this.userResolver = userResolver;
+	}
+
+	/**
+	 * Maps given journal details.
+	 *
+	 * @param nonExistentLogins
+	 * 			receives Redmine users without OneDev user, as <tt>name:id</tt>
+	 * @param unknownDetails
+	 * 			receives kind (for instance <tt>history property</tt>) and name of details which can not be mapped
+	 */
+	List<IssueChangeData> map(List<RedmineIssueDetail.Detail> details, Set<String> nonExistentLogins,
+			BiConsumer<String, String> unknownDetails) {
+		List<IssueChangeData> changes = new ArrayList<>();
+		Map<String, Input> oldFields = new LinkedHashMap<>();
+		Map<String, Input> newFields = new LinkedHashMap<>();
+
+		for (RedmineIssueDetail.Detail detail : details) {
+			String property = detail.property;
+			String name = detail.name;
+			String oldValue = detail.oldValue;
+			String newValue = detail.newValue;
+			IssueChangeData data = null;
+
+			if ("attr".equals(property)) {
+				if ("subject".equals(name)) {
+					data = new IssueTitleChangeData(oldValue, newValue);
+				} else if ("description".equals(name)) {
+					// not migrated because OneDev does not support description history
+				} else if ("status_id".equals(name)) {
+					// do not convert Redmine status to OneDev state for change history
+					String oldStatus = statusId2nameMap.get(oldValue);
+					String newStatus = statusId2nameMap.get(newValue);
+					data = new IssueStateChangeData(oldStatus, newStatus, Collections.emptyMap(), Collections.emptyMap());
+				} else if ("tracker_id".equals(name)) {
+					// do not convert Redmine tracker to OneDev type for change history
+					String oldTracker = trackerId2nameMap.get(oldValue);
+					String newTracker = trackerId2nameMap.get(newValue);
+					addToFields("Type", oldTracker, oldFields);
+					addToFields("Type", newTracker, newFields);
+				} else if ("priority_id".equals(name)) {
+					// do not convert Redmine priority to OneDev priority for change history
+					String oldPriority = priorityId2nameMap.get(oldValue);
+					String newPriority = priorityId2nameMap.get(newValue);
+					addToFields("Priority", oldPriority, oldFields);
+					addToFields("Priority", newPriority, newFields);
+				} else if ("assigned_to_id".equals(name)) {
+					if (oldValue != null) {
+						User oldUser = userResolver.apply(oldValue);
+						if (oldUser != null)
+							addToFields(importOption.getAssigneesIssueField(), oldUser.getName(), oldFields);
+						else
+							nonExistentLogins.add(userId2nameMap.getOrDefault(oldValue, "") + ":" + oldValue);
+					}
+					if (newValue != null) {
+						User newUser = userResolver.apply(newValue);
+						if (newUser != null)
+							addToFields(importOption.getAssigneesIssueField(), newUser.getName(), newFields);
+						else
+							nonExistentLogins.add(userId2nameMap.getOrDefault(newValue, "") + ":" + newValue);
+					}
+				} else if ("category_id".equals(name)) {
+					String oldCategory = categoryId2nameMap.get(oldValue);
+					String newCategory = categoryId2nameMap.get(newValue);
+					addToFields(importOption.getCategoryIssueField(), oldCategory, oldFields);
+					addToFields(importOption.getCategoryIssueField(), newCategory, newFields);
+				} else if ("fixed_version_id".equals(name)) {
+					String oldVersion = versionId2nameMap.get(oldValue);
+					String newVersion = versionId2nameMap.get(newValue);
+					if (oldVersion != null && newVersion != null) {
+						Milestone oldMilestone = new Milestone();
+						Milestone newMilestone = new Milestone();
+						oldMilestone.setName(oldVersion);
+						newMilestone.setName(newVersion);
+						data = new IssueMilestoneChangeData(Collections.singletonList(oldMilestone), Collections.singletonList(newMilestone));
+					} else if (newVersion != null) {
+						data = new IssueMilestoneAddData(newVersion);
+					} else if (oldVersion != null) {
+						data = new IssueMilestoneRemoveData(oldVersion);
+					}
+				} else if ("start_date".equals(name)) {
+					String fieldName = importOption.getStartDateField();
+					if (fieldName == null)
+						fieldName = "Start date";
+					addToFields(fieldName, oldValue, oldFields);
+					addToFields(fieldName, newValue, newFields);
+				} else if ("due_date".equals(name)) {
+					String fieldName = importOption.getDueDateField();
+					if (fieldName == null)
+						fieldName = "Due date";
+					addToFields(fieldName, oldValue, oldFields);
+					addToFields(fieldName, newValue, newFields);
+				} else if ("done_ratio".equals(name)) {
+					String fieldName = importOption.getDoneRatioField();
+					if (fieldName == null)
+						fieldName = "Done Ratio";
+					addToFields(fieldName, oldValue, oldFields);
+					addToFields(fieldName, newValue, newFields);
+				} else if ("estimated_hours".equals(name)) {
+					String fieldName = importOption.getEstimatedHoursField();
+					if (fieldName == null)
+						fieldName = "Estimated Hours";
+					addToFields(fieldName, oldValue, oldFields);
+					addToFields(fieldName, newValue, newFields);
+				} else {
+					unknownDetails.accept("history property name", name);
+				}
+			} else if ("relation".equals(property)) {
+				String linkName;
+				switch (name) {
+					case "relates":     linkName = "Related To"; break;
+					case "duplicates":  linkName = "Duplicating"; break;
+					case "duplicated":  linkName = "Duplicated By"; break;
+					case "blocks":      linkName = "Blocking"; break;
+					case "blocked":     linkName = "Blocked By"; break;
+					case "precedes":    linkName = "Precedes"; break;
+					case "follows":     linkName = "Follows"; break;
+					case "copied_to":   linkName = "Copied To"; break;
+					case "copied_from": linkName = "Copied From"; break;
+					default:            linkName = "Unknown"; break;
+				}
+				data = new ImportUtils.TempIssueLinkChangeData(linkName, oldValue, newValue);
+			} else if ("cf".equals(property)) {
+				// custom fields
+				String fieldName = fieldId2nameMap.get(name);
+				if (fieldName != null) {
+					addToFields(fieldName, oldValue, oldFields);
+					addToFields(fieldName, newValue, newFields);
+				} else {
+					unknownDetails.accept("history custom field", name);
+				}
+			} else if ("attachment".equals(property)) {
+				// not migrated because OneDev does not support attachment history
+			} else {
+				unknownDetails.accept("history property", property);
+			}
+
+			if (data != null)
+				changes.add(data);
+		}
+
+		if (!oldFields.isEmpty() || !newFields.isEmpty())
+			changes.add(new IssueFieldChangeData(oldFields, newFields));
+		return changes;
+	}
+
+	private static void addToFields(String fieldName, @Nullable String value, Map<String, Input> fields) {
+		if (value != null && !value.isEmpty())
+			fields.put(fieldName, new Input(fieldName, InputSpec.ENUMERATION, Collections.singletonList(value)));
+	}
+
+}
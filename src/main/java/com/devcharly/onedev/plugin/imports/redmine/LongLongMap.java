@@ -0,0 +1,198 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hash map from <tt>long</tt> to <tt>long</tt> using open addressing over primitive arrays,
+ * so that no objects are allocated per entry. It is used for bookkeeping of Redmine issue IDs,
+ * which can be six-figure counts for large projects.
+ */
+class LongLongMap {
+
+	private static final long FREE = Long.MIN_VALUE;
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+
+	private long[] values;
+
+	private int size;
+
+	// key Long.MIN_VALUE marks free slots, so it is stored separately
+	private boolean hasFreeKey;
+
+	private long freeKeyValue;
+
+	LongLongMap() {
+		this(16);
+	}
+
+	LongLongMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		keys = new long[capacity];
+		values = new long[capacity];
+		Arrays.fill(keys, FREE);
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean containsKey(long key) {
+		if (key == FREE)
+			return hasFreeKey;
+		return keys[indexOf(key)] != FREE;
+	}
+
+	long get(long key, long defaultValue) {
+		if (key == FREE)
+			return hasFreeKey ? freeKeyValue : defaultValue;
+		int index = indexOf(key);
+		return (keys[index] != FREE) ? values[index] : defaultValue;
+	}
+
+	void put(long key, long value) {
+		if (key == FREE) {
+			if (!hasFreeKey)
+				size++;
+			hasFreeKey = true;
+			freeKeyValue = value;
+			return;
+		}
+		int index = indexOf(key);
+		values[index] = value;
+		if (keys[index] == FREE) {
+			keys[index] = key;
+			size++;
+			if (size > keys.length * LOAD_FACTOR)
+				rehash(keys.length << 1);
+		}
+	}
+
+	void forEach(EntryConsumer consumer) {
+		if (hasFreeKey)
+			consumer.accept(FREE, freeKeyValue);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE)
+				consumer.accept(keys[i], values[i]);
+		}
+	}
+
+	/**
+	 * Gets a read-only view of this map with boxed keys and values, for APIs which require a
+	 * {@link Map}.
+	 */
+	Map<Long, Long> asMap() {
+		return new AbstractMap<Long, Long>() {
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof Long && LongLongMap.this.containsKey((Long) key);
+			}
+
+			@Override
+			public Long get(Object key) {
+				if (!containsKey(key))
+					return null;
+				return LongLongMap.this.get((Long) key, 0);
+			}
+
+			@Override
+			public Set<Entry<Long, Long>> entrySet() {
+				return new AbstractSet<Entry<Long, Long>>() {
+
+					@Override
+					public int size() {
+						return size;
+					}
+
+					@Override
+					public Iterator<Entry<Long, Long>> iterator() {
+						return new Iterator<Entry<Long, Long>>() {
+
+							private int index = hasFreeKey ? -1 : next(0);
+
+							private int next(int from) {
+								while (from < keys.length && keys[from] == FREE)
+									from++;
+								return from;
+							}
+
+							@Override
+							public boolean hasNext() {
+								return index < keys.length;
+							}
+
+							@Override
+							public Entry<Long, Long> next() {
+								if (!hasNext())
+									throw new NoSuchElementException();
+								Entry<Long, Long> entry;
+								if (index == -1)
+									entry = new SimpleImmutableEntry<>(FREE, freeKeyValue);
+								else
+									entry = new SimpleImmutableEntry<>(keys[index], values[index]);
+								index = next(index + 1);
+								return entry;
+							}
+
+						};
+					}
+
+				};
+			}
+
+		};
+	}
+
+	private int indexOf(long key) {
+		int mask = keys.length - 1;
+		int index = mix(key) & mask;
+		while (keys[index] != FREE && keys[index] != key)
+			index = (index + 1) & mask;
+		return index;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new long[capacity];
+		values = new long[capacity];
+		Arrays.fill(keys, FREE);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int index = indexOf(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	interface EntryConsumer {
+
+		void accept(long key, long value);
+
+	}
+
+}
@@ -0,0 +1,282 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.onedev.commons.utils.ExplicitException;
+import io.onedev.commons.utils.TaskLogger;
+import io.onedev.server.OneDev;
+import io.onedev.server.util.JerseyUtils;
+
+/**
+ * Client used for all Redmine API requests of an import. Requests are throttled and retried
+ * with backoff if Redmine is overloaded, and json documents are served from the
+ * {@link ResponseCache} if possible.
+ */
+class RedmineClient implements AutoCloseable {
+
+	private static final int STATUS_NOT_MODIFIED = 304;
+
+	private final SharedClient sharedClient;
+
+	private final Client client;
+
+	private final RequestThrottle throttle;
+
+	private final RequestStats stats = new RequestStats();
+
+	private final ImportMetrics metrics = new ImportMetrics();
+
+	@Nullable
+	private final ResponseCache cache;
+
+	RedmineClient(ImportServer server) {
+		sharedClient = SharedClient.acquire(server);
+		client = sharedClient.getClient();
+		throttle = sharedClient.getThrottle();
+		cache = ResponseCache.open(server);
+	}
+
+	RequestStats getStats() {
+		return stats;
+	}
+
+	ImportMetrics getMetrics() {
+		return metrics;
+	}
+
+	JsonNode get(String apiEndpoint, TaskLogger logger) {
+		return get(apiEndpoint, null, logger);
+	}
+
+	/**
+	 * Gets json document of given endpoint.
+	 *
+	 * @param version
+	 * 			version of the document if known, for instance <tt>updated_on</tt> of an issue.
+	 * 			A cached document with same version is returned without any request
+	 */
+	JsonNode get(String apiEndpoint, @Nullable String version, TaskLogger logger) {
+		return get(apiEndpoint, version, logger, parser -> getObjectMapper().readTree(parser));
+	}
+
+	/**
+	 * Gets document of given endpoint and decodes it with given streaming decoder.
+	 *
+	 * @see #get(String, String, TaskLogger)
+	 */
+	<T> T get(String apiEndpoint, @Nullable String version, TaskLogger logger, JsonDecoder<T> decoder) {
+		ResponseCache responseCache = isCacheable(apiEndpoint) ? cache : null;
+		ResponseCache.Entry entry = (responseCache != null) ? responseCache.get(apiEndpoint) : null;
+		if (entry != null && version != null && version.equals(entry.version))
+			return decode(entry.body, decoder);
+
+		Supplier<Invocation.Builder> request = () -> {
+			Invocation.Builder builder = client.target(apiEndpoint).request();
+			if (entry != null && (version == null || entry.version == null)) {
+				if (entry.etag != null)
+					builder.header(HttpHeaders.IF_NONE_MATCH, entry.etag);
+				if (entry.lastModified != null)
+					builder.header(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+			}
+			return builder;
+		};
+
+		return execute(apiEndpoint, request, logger, response -> {
+			if (entry != null && response.getStatus() == STATUS_NOT_MODIFIED) {
+				responseCache.touch(entry);
+				return decode(entry.body, decoder);
+			}
+
+			String errorMessage = JerseyUtils.checkStatus(apiEndpoint, response);
+			if (errorMessage != null)
+				throw new ExplicitException(errorMessage);
+
+			if (responseCache == null) {
+				// decode while reading if there is no need to keep the body
+				try (InputStream is = response.readEntity(InputStream.class);
+						JsonParser parser = getObjectMapper().getFactory().createParser(is)) {
+					return decoder.decode(parser);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			String body = response.readEntity(String.class);
+			String etag = response.getHeaderString(HttpHeaders.ETAG);
+			String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+			if (version != null || etag != null || lastModified != null) {
+				ResponseCache.Entry newEntry = new ResponseCache.Entry();
+				newEntry.url = apiEndpoint;
+				newEntry.version = version;
+				newEntry.etag = etag;
+				newEntry.lastModified = lastModified;
+				newEntry.body = body;
+				responseCache.put(newEntry);
+			}
+			return decode(body, decoder);
+		});
+	}
+
+	/**
+	 * Redmine users are not cached, as they include email addresses.
+	 */
+	private static boolean isCacheable(String apiEndpoint) {
+		String path = StringUtils.substringBefore(apiEndpoint, "?");
+		return !path.endsWith("/users.json") && !path.contains("/users/");
+	}
+
+	/**
+	 * Gets current time of Redmine, from the date header of the response to given endpoint.
+	 *
+	 * @return the time, or <tt>null</tt> if Redmine did not send a date header
+	 */
+	@Nullable
+	Instant getServerTime(String apiEndpoint, TaskLogger logger) {
+		return execute(apiEndpoint, () -> client.target(apiEndpoint).request(), logger, response -> {
+			String errorMessage = JerseyUtils.checkStatus(apiEndpoint, response);
+			if (errorMessage != null)
+				throw new ExplicitException(errorMessage);
+			String date = response.getHeaderString(HttpHeaders.DATE);
+			try {
+				return (date != null) ? ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant() : null;
+			} catch (DateTimeParseException e) {
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Downloads content of given url and passes it to given reader.
+	 */
+	<T> T download(String url, TaskLogger logger, ContentReader<T> reader) {
+		return execute(url, () -> client.target(url).request(), logger, response -> {
+			String errorMessage = JerseyUtils.checkStatus(url, response);
+			if (errorMessage != null) {
+				throw new ExplicitException(String.format(
+						"Error downloading attachment (url: %s, error message: %s)",
+						url, errorMessage));
+			}
+			try (InputStream is = response.readEntity(InputStream.class)) {
+				return reader.read(is);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	/**
+	 * Sends a GET request, retrying it if Redmine is overloaded or can not be reached.
+	 */
+	private <T> T execute(String url, Supplier<Invocation.Builder> request, TaskLogger logger,
+			Function<Response, T> handler) {
+		int attempt = 0;
+		while (true) {
+			try {
+				throttle.acquire(stats);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			long retryDelay;
+			sharedClient.acquireConnection();
+			try {
+				stats.requests.incrementAndGet();
+				stats.inFlightRequests.incrementAndGet();
+				long start = System.nanoTime();
+				try (Response response = request.get().get()) {
+					int status = response.getStatus();
+					if (!RequestThrottle.isRetryable(status)) {
+						throttle.recordSuccess();
+						try {
+							return handler.apply(response);
+						} finally {
+							// bytes as reported by Redmine, unknown for chunked responses
+							metrics.get(ImportMetrics.HTTP).record(System.nanoTime() - start, response.getLength());
+						}
+					}
+					metrics.get(ImportMetrics.HTTP).record(System.nanoTime() - start);
+
+					throttle.recordFailure(stats);
+					if (attempt >= throttle.getMaxRetries())
+						return handler.apply(response);
+					retryDelay = RequestThrottle.getRetryDelay(attempt,
+							response.getHeaderString(HttpHeaders.RETRY_AFTER));
+					logger.log(String.format("Redmine responded with status %d, retrying in %d seconds (url: %s)",
+							status, retryDelay / 1000, url));
+				}
+			} catch (ProcessingException e) {
+				throttle.recordFailure(stats);
+				if (attempt >= throttle.getMaxRetries())
+					throw e;
+				retryDelay = RequestThrottle.getRetryDelay(attempt, null);
+				logger.log(String.format("Error requesting Redmine, retrying in %d seconds (url: %s, error: %s)",
+						retryDelay / 1000, url, e.getMessage()));
+			} finally {
+				stats.inFlightRequests.decrementAndGet();
+				sharedClient.releaseConnection();
+			}
+
+			stats.retries.incrementAndGet();
+			attempt++;
+			try {
+				Thread.sleep(retryDelay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private static <T> T decode(String body, JsonDecoder<T> decoder) {
+		try (JsonParser parser = getObjectMapper().getFactory().createParser(body)) {
+			return decoder.decode(parser);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static ObjectMapper getObjectMapper() {
+		return OneDev.getInstance(ObjectMapper.class);
+	}
+
+	@Override
+	public void close() {
+		sharedClient.release();
+		if (cache != null)
+			cache.release();
+	}
+
+	interface JsonDecoder<T> {
+
+		T decode(JsonParser parser) throws IOException;
+
+	}
+
+	interface ContentReader<T> {
+
+		T read(InputStream is) throws IOException;
+
+	}
+
+}
@@ -0,0 +1,311 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Compact representation of a Redmine issue detail document
+ * (<tt>/issues/{id}.json?include=relations,watchers,attachments,journals</tt>), holding only
+ * the fields needed by the import. It is decoded with a streaming parser, so that no json
+ * tree is built for issues with long histories.
+ */
+class RedmineIssueDetail {
+
+	String description;
+
+	/**
+	 * Description converted to Markdown, see {@link TextConversionStage}.
+	 */
+	String convertedDescription;
+
+	List<Relation> relations = Collections.emptyList();
+
+	List<Watcher> watchers = Collections.emptyList();
+
+	List<Attachment> attachments = Collections.emptyList();
+
+	List<Journal> journals = Collections.emptyList();
+
+	static class Relation {
+
+		long id;
+
+		long issueId;
+
+		long issueToId;
+
+		String relationType;
+
+	}
+
+	static class Watcher {
+
+		String id;
+
+		String name;
+
+	}
+
+	static class Attachment {
+
+		long id;
+
+		String filename;
+
+		long filesize;
+
+		String contentUrl;
+
+		String description = "";
+
+		String digest;
+
+		String authorName;
+
+		String createdOn;
+
+	}
+
+	static class Journal {
+
+		long id;
+
+		String userId;
+
+		String userName;
+
+		String createdOn;
+
+		String notes = "";
+
+		/**
+		 * Notes converted to Markdown, see {@link TextConversionStage}.
+		 */
+		String convertedNotes = "";
+
+		List<Detail> details = Collections.emptyList();
+
+	}
+
+	static class Detail {
+
+		String property;
+
+		String name;
+
+		String oldValue;
+
+		String newValue;
+
+	}
+
+	/**
+	 * Reads an issue detail document, that is an object with an <tt>issue</tt> field.
+	 */
+	static RedmineIssueDetail read(JsonParser parser) throws IOException {
+		RedmineIssueDetail detail = new RedmineIssueDetail();
+		expectStartObject(parser);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("issue".equals(field))
+				readIssue(parser, detail);
+			else
+				parser.skipChildren();
+		}
+		return detail;
+	}
+
+	private static void readIssue(JsonParser parser, RedmineIssueDetail detail) throws IOException {
+		expectCurrentStartObject(parser);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "description":
+				detail.description = readText(parser);
+				break;
+			case "relations":
+				detail.relations = readArray(parser, RedmineIssueDetail::readRelation);
+				break;
+			case "watchers":
+				detail.watchers = readArray(parser, RedmineIssueDetail::readWatcher);
+				break;
+			case "attachments":
+				detail.attachments = readArray(parser, RedmineIssueDetail::readAttachment);
+				break;
+			case "journals":
+				detail.journals = readArray(parser, RedmineIssueDetail::readJournal);
+				break;
+			default:
+				parser.skipChildren();
+			}
+		}
+	}
+
+	private static Relation readRelation(JsonParser parser) throws IOException {
+		Relation relation = new Relation();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "id": relation.id = parser.getValueAsLong(); break;
+			case "issue_id": relation.issueId = parser.getValueAsLong(); break;
+			case "issue_to_id": relation.issueToId = parser.getValueAsLong(); break;
+			case "relation_type": relation.relationType = readText(parser); break;
+			default: parser.skipChildren();
+			}
+		}
+		return relation;
+	}
+
+	private static Watcher readWatcher(JsonParser parser) throws IOException {
+		Watcher watcher = new Watcher();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "id": watcher.id = readText(parser); break;
+			case "name": watcher.name = readText(parser); break;
+			default: parser.skipChildren();
+			}
+		}
+		return watcher;
+	}
+
+	private static Attachment readAttachment(JsonParser parser) throws IOException {
+		Attachment attachment = new Attachment();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "id": attachment.id = parser.getValueAsLong(); break;
+			case "filename": attachment.filename = readText(parser); break;
+			case "filesize": attachment.filesize = parser.getValueAsLong(); break;
+			case "content_url": attachment.contentUrl = readText(parser); break;
+			case "description": attachment.description = readText(parser, ""); break;
+			case "digest": attachment.digest = readText(parser); break;
+			case "created_on": attachment.createdOn = readText(parser); break;
+			case "author":
+				attachment.authorName = readNamedReference(parser)[1];
+				break;
+			default: parser.skipChildren();
+			}
+		}
+		return attachment;
+	}
+
+	private static Journal readJournal(JsonParser parser) throws IOException {
+		Journal journal = new Journal();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "id": journal.id = parser.getValueAsLong(); break;
+			case "user":
+				String[] user = readNamedReference(parser);
+				journal.userId = user[0];
+				journal.userName = user[1];
+				break;
+			case "created_on": journal.createdOn = readText(parser); break;
+			case "notes": journal.notes = readText(parser, ""); break;
+			case "details": journal.details = readArray(parser, RedmineIssueDetail::readDetail); break;
+			default: parser.skipChildren();
+			}
+		}
+		return journal;
+	}
+
+	private static Detail readDetail(JsonParser parser) throws IOException {
+		Detail detail = new Detail();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "property": detail.property = readText(parser); break;
+			case "name": detail.name = readText(parser); break;
+			case "old_value": detail.oldValue = readText(parser); break;
+			case "new_value": detail.newValue = readText(parser); break;
+			default: parser.skipChildren();
+			}
+		}
+		return detail;
+	}
+
+	/**
+	 * Reads an object like <tt>{"id": 1, "name": "John Doe"}</tt> into an array of id and name.
+	 */
+	private static String[] readNamedReference(JsonParser parser) throws IOException {
+		String[] reference = new String[2];
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return reference;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "id": reference[0] = readText(parser); break;
+			case "name": reference[1] = readText(parser); break;
+			default: parser.skipChildren();
+			}
+		}
+		return reference;
+	}
+
+	@Nullable
+	private static String readText(JsonParser parser) throws IOException {
+		return readText(parser, null);
+	}
+
+	private static String readText(JsonParser parser, @Nullable String defaultValue) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.VALUE_NULL)
+			return defaultValue;
+		if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return defaultValue;
+		}
+		return parser.getValueAsString(defaultValue);
+	}
+
+	private static <T> List<T> readArray(JsonParser parser, ElementReader<T> elementReader) throws IOException {
+		if (parser.currentToken() != JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return Collections.emptyList();
+		}
+		List<T> elements = new ArrayList<>();
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+			if (token == JsonToken.START_OBJECT)
+				elements.add(elementReader.read(parser));
+			else
+				parser.skipChildren();
+		}
+		return elements;
+	}
+
+	private static void expectStartObject(JsonParser parser) throws IOException {
+		parser.nextToken();
+		expectCurrentStartObject(parser);
+	}
+
+	private static void expectCurrentStartObject(JsonParser parser) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT)
+			throw new IOException("Json object expected but found " + parser.currentToken());
+	}
+
+	private interface ElementReader<T> {
+
+		T read(JsonParser parser) throws IOException;
+
+	}
+
+}
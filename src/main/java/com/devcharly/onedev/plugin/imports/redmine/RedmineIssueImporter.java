@@ -29,6 +29,11 @@ public class RedmineIssueImporter extends IssueImporter<ImportServer, IssueImpor
 	@Override
 	public String doImport(ImportServer where, IssueImportSource what, IssueImportOption how, Project project,
 			boolean dryRun, TaskLogger logger) {
+		if (how.isEstimateOnly()) {
+			return ImportEstimator.estimate(where, what.getProject(), project, how, logger)
+					.toHtml("Import estimated successfully");
+		}
+
 		if (how.isImportVersions()) {
 			importVersions(where, what.getProject(), project, dryRun, logger);
 			if (!how.isImportIssues())
@@ -1,5 +1,6 @@
 package com.devcharly.onedev.plugin.imports.redmine;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -61,7 +62,12 @@ commit:123456789abcdef       123456789abcdef
 
 class RedmineTextileConverter {
 
-	private static final String
+	/**
+	 * Version of the Markdown produced by the converters, to be incremented whenever a rule changes.
+	 */
+	static final int VERSION = 1;
+
+	static final String
 		H1_MATCH = "(?m)^\\h*h1\\.\\h+",
 		H2_MATCH = "(?m)^\\h*h2\\.\\h+",
 		H3_MATCH = "(?m)^\\h*h3\\.\\h+",
@@ -103,12 +109,55 @@ class RedmineTextileConverter {
 		IMAGE_TITLE_REPLACE    = "![$2]($1)";
 
 
+	private final ConversionBudget budget;
+
+	// the text being converted, each rule reads it and writes its result to the spare buffer
+	private StringBuilder text;
+
+	private StringBuilder spare;
+
+	private RedmineTextileConverter(CharSequence str, ConversionBudget budget) {
+		this.budget = budget;
+		text = new StringBuilder(str.length() + 16).append(str);
+		spare = new StringBuilder(str.length() + 16);
+	}
+
 	static String convertTextileToMarkdown(String str) {
+		return convertTextileToMarkdown(str, ConversionBudget.UNLIMITED);
+	}
+
+	/**
+	 * @throws ConversionBudget.BudgetExceededException if conversion exceeds given budget
+	 */
+	static String convertTextileToMarkdown(String str, ConversionBudget budget) {
 		if (str == null || str.isEmpty())
 			return str;
+		return new RedmineTextileConverter(str, budget).convert().toString();
+	}
+
+	/**
+	 * Appends the Markdown conversion of given text to given buffer.
+	 *
+	 * @throws ConversionBudget.BudgetExceededException if conversion exceeds given budget
+	 */
+	static void convertTextileToMarkdown(CharSequence str, StringBuilder out, ConversionBudget budget) {
+		if (str.length() != 0)
+			out.append(new RedmineTextileConverter(str, budget).convert());
+	}
 
+	/**
+	 * Appends the Markdown conversion of given text to given output.
+	 *
+	 * @throws ConversionBudget.BudgetExceededException if conversion exceeds given budget
+	 */
+	static void convertTextileToMarkdown(CharSequence str, Appendable out, ConversionBudget budget) throws IOException {
+		if (str.length() != 0)
+			out.append(new RedmineTextileConverter(str, budget).convert());
+	}
+
+	private StringBuilder convert() {
 		// quoted pre-formatted text
-		str = replace(str, QUOTED_PRE_MATCH, matcher -> {
+		replace(QUOTED_PRE_MATCH, matcher -> {
 			String content = matcher.group(2);
 			if (!content.startsWith("\n"))
 				content = '\n' + content;
@@ -123,7 +172,7 @@ class RedmineTextileConverter {
 		// to exclude it from further processing
 		HashMap<String, String[]> tempPreTags = new HashMap<>();
 		AtomicInteger preId = new AtomicInteger();
-		str = replace(str, PRE_MATCH, matcher -> {
+		replace(PRE_MATCH, matcher -> {
 			String tempTag = "<temptag-pre-" + preId.incrementAndGet() + ">";
 			tempPreTags.put(tempTag, new String[] {
 					matcher.group(1),
@@ -138,59 +187,62 @@ class RedmineTextileConverter {
 		// to exclude it from further processing (e.g. for @*text*@)
 		HashMap<String, String> tempTags = new HashMap<>();
 		AtomicInteger tempId = new AtomicInteger();
-		str = replace(str, INLINE_CODE_MATCH, matcher -> {
+		replace(INLINE_CODE_MATCH, matcher -> {
 			String tempTag = "<temptag-code-" + tempId.incrementAndGet() + ">";
 			tempTags.put(tempTag, "`" + matcher.group(1) + "`");
 			return tempTag;
 		});
 
 		// unordered lists
-		str = replace(str, UNORDERED_LIST_MATCH, matcher -> {
+		replace(UNORDERED_LIST_MATCH, matcher -> {
 			return matcher.group(1) + StringUtils.repeat(" ", (matcher.group(2).length() - 1) * 2) + "-";
 		});
 
 		// ordered lists
-		str = replace(str, ORDERED_LIST_MATCH, matcher -> {
+		replace(ORDERED_LIST_MATCH, matcher -> {
 			return matcher.group(1) + StringUtils.repeat(" ", (matcher.group(2).length() - 1) * 3) + "1.";
 		});
 
 		// headings
-		str = str.replaceAll(H1_MATCH, H1_REPLACE);
-		str = str.replaceAll(H2_MATCH, H2_REPLACE);
-		str = str.replaceAll(H3_MATCH, H3_REPLACE);
-		str = str.replaceAll(H4_MATCH, H4_REPLACE);
+		replaceAll(H1_MATCH, H1_REPLACE);
+		replaceAll(H2_MATCH, H2_REPLACE);
+		replaceAll(H3_MATCH, H3_REPLACE);
+		replaceAll(H4_MATCH, H4_REPLACE);
 
 		// __italic__ -> _italic_
-		str = str.replaceAll(ITALIC_MATCH, ITALIC_REPLACE);
+		replaceAll(ITALIC_MATCH, ITALIC_REPLACE);
 
 		// *bold* -> **bold**
-		str = str.replaceAll(BOLD_MATCH, BOLD_REPLACE);
+		replaceAll(BOLD_MATCH, BOLD_REPLACE);
 
 		// +underline+ -> ++underline++
-		str = str.replaceAll(UNDERLINE_MATCH, UNDERLINE_REPLACE);
+		replaceAll(UNDERLINE_MATCH, UNDERLINE_REPLACE);
 
 		// -strike-through- -> ~~strike-through~~
-		str = str.replaceAll(STRIKE_THROUGH_MATCH, STRIKE_THROUGH_REPLACE);
+		replaceAll(STRIKE_THROUGH_MATCH, STRIKE_THROUGH_REPLACE);
 
 		// remove prefix "commit:" from commit links
-		str = str.replaceAll(COMMIT_MATCH, COMMIT_REPLACE);
+		replaceAll(COMMIT_MATCH, COMMIT_REPLACE);
 
 		// remove simple wiki links
-		str = str.replaceAll(WIKI_LINK_MATCH, WIKI_LINK_REPLACE);
+		replaceAll(WIKI_LINK_MATCH, WIKI_LINK_REPLACE);
 
 		// inline images
-		str = str.replaceAll(IMAGE_TITLE_MATCH, IMAGE_TITLE_REPLACE);
-		str = str.replaceAll(IMAGE_MATCH, IMAGE_REPLACE);
+		replaceAll(IMAGE_TITLE_MATCH, IMAGE_TITLE_REPLACE);
+		replaceAll(IMAGE_MATCH, IMAGE_REPLACE);
 
 		// replace temporary tags
-		for (Entry<String, String> e : tempTags.entrySet())
-			str = str.replace(e.getKey(), e.getValue());
+		for (Entry<String, String> e : tempTags.entrySet()) {
+			budget.check();
+			replaceLiteral(e.getKey(), e.getValue());
+		}
 
 		// replace temporary tags with markdown code blocks
 		for (Entry<String, String[]> e : tempPreTags.entrySet()) {
+			budget.check();
 			String[] values = e.getValue();
 			String value = values[1];
-			String value2 = value.replaceAll(PRE_CODE_MATCH, PRE_CODE_REPLACE);
+			String value2 = Pattern.compile(PRE_CODE_MATCH).matcher(budget.guard(value)).replaceAll(PRE_CODE_REPLACE);
 
 			String replacement = values[0].startsWith(">") ? "> ~~~" : "~~~";
 			if (value2.equals(value))
@@ -198,26 +250,75 @@ class RedmineTextileConverter {
 			replacement += value2;
 			replacement += values[2].startsWith(">") ? "\n> ~~~\n" : "\n~~~\n";
 
-			str = str.replace(e.getKey(), replacement);
+			replaceLiteral(e.getKey(), replacement);
 		}
 
-		return str;
+		return text;
 	}
 
-	private static String replace( String str, String regex, Function<Matcher, String> callback ) {
-		Matcher matcher = Pattern.compile( regex ).matcher( str );
+	/**
+	 * Same as {@link Matcher#replaceAll(String)} for replacements referring to groups
+	 * <tt>$1</tt> to <tt>$9</tt> only.
+	 */
+	private void replaceAll(String regex, String replacement) {
+		replace(regex, matcher -> {
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < replacement.length(); i++) {
+				char c = replacement.charAt(i);
+				if (c == '$' && i + 1 < replacement.length()) {
+					String group = matcher.group(replacement.charAt(++i) - '0');
+					if (group != null)
+						builder.append(group);
+				} else {
+					builder.append(c);
+				}
+			}
+			return builder;
+		});
+	}
 
-		boolean result = matcher.find();
-		if( !result )
-			return str;
+	private void replace(String regex, Function<Matcher, CharSequence> callback) {
+		Matcher matcher = Pattern.compile(regex).matcher(budget.guard(text));
+		if (!matcher.find())
+			return;
 
-		StringBuffer sb = new StringBuffer();
+		StringBuilder out = spare;
+		out.setLength(0);
+		int copied = 0;
 		do {
-			matcher.appendReplacement( sb, Matcher.quoteReplacement( callback.apply( matcher ) ) );
-			result = matcher.find();
-		} while( result );
-		matcher.appendTail( sb );
-		return sb.toString();
+			out.append(text, copied, matcher.start());
+			out.append(callback.apply(matcher));
+			copied = matcher.end();
+		} while (matcher.find());
+		out.append(text, copied, text.length());
+		swap();
+	}
+
+	/**
+	 * Same as {@link String#replace(CharSequence, CharSequence)}.
+	 */
+	private void replaceLiteral(String target, String replacement) {
+		int index = text.indexOf(target);
+		if (index == -1)
+			return;
+
+		StringBuilder out = spare;
+		out.setLength(0);
+		int copied = 0;
+		do {
+			out.append(text, copied, index);
+			out.append(replacement);
+			copied = index + target.length();
+			index = text.indexOf(target, copied);
+		} while (index != -1);
+		out.append(text, copied, text.length());
+		swap();
+	}
+
+	private void swap() {
+		StringBuilder temp = text;
+		text = spare;
+		spare = temp;
 	}
 
 /*
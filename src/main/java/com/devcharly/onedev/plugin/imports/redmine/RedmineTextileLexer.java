@@ -0,0 +1,716 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * Textile to Markdown converter producing the same output as the rules of
+ * {@link RedmineTextileConverter}, without rescanning the whole text once per rule.
+ * <p>
+ * Pre-formatted blocks are found in a first scan of the text. All other rules can not cross
+ * lines (except wiki links), so they are applied line by line with hand-written scanners in
+ * the same order as the regular expressions. Text protected from further processing
+ * (pre-formatted blocks and inline code) is kept in a table and represented in the working
+ * text by a single private use character referring to its table entry, which is expanded in
+ * a final scan.
+ * <p>
+ * Texts which would behave differently in this representation (line terminators other than
+ * <tt>\n</tt>, private use characters or texts looking like temporary tags of the regex
+ * converter) are passed to {@link RedmineTextileConverter}.
+ */
+class RedmineTextileLexer {
+
+	private static final char FIRST_SPAN = '\uE000';
+
+	private static final char LAST_SPAN = '\uF8FF';
+
+	private static final String[] IMAGE_EXTENSIONS = {".png", ".gif", ".jpg", ".jpeg"};
+
+	private static final Pattern PRE_CODE_PATTERN = Pattern.compile(RedmineTextileConverter.PRE_CODE_MATCH);
+
+	private final ConversionBudget budget;
+
+	private final List<Span> spans = new ArrayList<>();
+
+	private StringBuilder line = new StringBuilder();
+
+	private StringBuilder result = new StringBuilder();
+
+	private RedmineTextileLexer(ConversionBudget budget) {
+		this.budget = budget;
+	}
+
+	static String convertTextileToMarkdown(String str) {
+		return convertTextileToMarkdown(str, ConversionBudget.UNLIMITED);
+	}
+
+	/**
+	 * Converts given text in time linear to its length, except for texts passed to the regex converter.
+	 *
+	 * @throws ConversionBudget.BudgetExceededException if conversion exceeds given budget
+	 */
+	static String convertTextileToMarkdown(String str, ConversionBudget budget) {
+		if (str == null || str.isEmpty())
+			return str;
+		StringBuilder markdown = new StringBuilder(str.length() + 16);
+		convertTextileToMarkdown(str, markdown, budget);
+		return markdown.toString();
+	}
+
+	/**
+	 * Appends the Markdown conversion of given text to given buffer.
+	 *
+	 * @throws ConversionBudget.BudgetExceededException if conversion exceeds given budget
+	 */
+	static void convertTextileToMarkdown(CharSequence text, StringBuilder out, ConversionBudget budget) {
+		String str = text.toString();
+		if (str.isEmpty())
+			return;
+		int length = out.length();
+		if (!isSupported(str) || !new RedmineTextileLexer(budget).convert(str, out)) {
+			out.setLength(length);
+			RedmineTextileConverter.convertTextileToMarkdown(str, out, budget);
+		}
+	}
+
+	/**
+	 * Appends the Markdown conversion of given text to given output.
+	 *
+	 * @throws ConversionBudget.BudgetExceededException if conversion exceeds given budget
+	 */
+	static void convertTextileToMarkdown(CharSequence text, Appendable out, ConversionBudget budget) throws IOException {
+		if (out instanceof StringBuilder) {
+			convertTextileToMarkdown(text, (StringBuilder) out, budget);
+		} else {
+			StringBuilder markdown = new StringBuilder(text.length() + 16);
+			convertTextileToMarkdown(text, markdown, budget);
+			out.append(markdown);
+		}
+	}
+
+	private static boolean isSupported(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029' || (c >= FIRST_SPAN && c <= LAST_SPAN))
+				return false;
+		}
+		return !str.contains("<temptag-");
+	}
+
+	/**
+	 * Appends converted text to given buffer.
+	 *
+	 * @return <tt>false</tt> if the text has more protected spans than private use characters
+	 */
+	private boolean convert(String str, StringBuilder markdown) {
+		String text = protectPreformatted(quotePreformatted(str));
+		if (text == null)
+			return false;
+
+		StringBuilder lines = new StringBuilder(text.length() + 16);
+		int start = 0;
+		while (true) {
+			int end = text.indexOf('\n', start);
+			if (end == -1)
+				end = text.length();
+			budget.check();
+			line.setLength(0);
+			line.append(text, start, end);
+			if (!convertLine())
+				return false;
+			lines.append(line);
+			if (end == text.length())
+				break;
+			lines.append('\n');
+			start = end + 1;
+		}
+
+		CharSequence linked = removeWikiLinks(lines);
+
+		markdown.ensureCapacity(markdown.length() + linked.length() + 16);
+		start = 0;
+		while (true) {
+			int end = indexOf(linked, '\n', start);
+			if (end == -1)
+				end = linked.length();
+			budget.check();
+			line.setLength(0);
+			line.append(linked, start, end);
+			convertImages(true);
+			convertImages(false);
+			// the regex converter would replace rule results looking like its temporary tags
+			if (line.indexOf("<temptag-") != -1)
+				return false;
+			expand(line, markdown);
+			if (end == linked.length())
+				break;
+			markdown.append('\n');
+			start = end + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Prefixes lines of quoted pre-formatted text with <tt>&gt; </tt>, see
+	 * {@link RedmineTextileConverter#QUOTED_PRE_MATCH}.
+	 */
+	private static String quotePreformatted(String str) {
+		StringBuilder builder = null;
+		int copied = 0;
+		int lineStart = 0;
+		while (lineStart < str.length()) {
+			if (str.charAt(lineStart) == '>') {
+				int i = skipH(str, lineStart + 1, str.length());
+				if (str.startsWith("<pre>", i)) {
+					int contentStart = i + 5;
+					int contentEnd = str.indexOf("</pre>", contentStart);
+					if (contentEnd == -1)
+						break;
+
+					if (builder == null)
+						builder = new StringBuilder(str.length() + 64);
+					builder.append(str, copied, contentStart);
+					int length = builder.length();
+					if (contentStart == contentEnd || str.charAt(contentStart) != '\n') {
+						builder.append('\n');
+						if (contentStart == contentEnd || str.charAt(contentStart) != '>')
+							builder.append("> ");
+					}
+					for (int j = contentStart; j < contentEnd; j++) {
+						char c = str.charAt(j);
+						builder.append(c);
+						if (c == '\n' && (j + 1 == contentEnd || str.charAt(j + 1) != '>'))
+							builder.append("> ");
+					}
+					if (!endsWith(builder, length, "\n> "))
+						builder.append("\n> ");
+					builder.append("</pre>");
+					copied = contentEnd + 6;
+
+					lineStart = str.indexOf('\n', copied) + 1;
+					if (lineStart == 0)
+						break;
+					continue;
+				}
+			}
+			lineStart = str.indexOf('\n', lineStart) + 1;
+			if (lineStart == 0)
+				break;
+		}
+		if (builder == null)
+			return str;
+		builder.append(str, copied, str.length());
+		return builder.toString();
+	}
+
+	/**
+	 * Replaces pre-formatted blocks with protected spans, see {@link RedmineTextileConverter#PRE_MATCH}.
+	 */
+	@Nullable
+	private String protectPreformatted(String str) {
+		StringBuilder builder = null;
+		int matchEnd = 0;
+		while (true) {
+			int pre = str.indexOf("<pre>", matchEnd);
+			if (pre == -1)
+				break;
+			int contentStart = skipH(str, pre + 5, str.length());
+			if (contentStart < str.length() && str.charAt(contentStart) == '\n')
+				contentStart++;
+			int close = str.indexOf("</pre>", contentStart);
+			if (close == -1)
+				break;
+
+			// leading whitespace, or '>' followed by whitespace
+			int start = pre;
+			while (start > matchEnd && isH(str.charAt(start - 1)))
+				start--;
+			int quote = pre;
+			while (quote > matchEnd && isS(str.charAt(quote - 1)))
+				quote--;
+			quote--;
+			boolean quotedStart = false;
+			if (quote >= matchEnd && str.charAt(quote) == '>') {
+				start = quote;
+				quotedStart = true;
+			}
+
+			// trailing whitespace, or '>' followed by whitespace
+			int contentEnd = close;
+			while (contentEnd > contentStart && isH(str.charAt(contentEnd - 1)))
+				contentEnd--;
+			boolean quotedEnd = false;
+			if (contentEnd - 1 >= contentStart && str.charAt(contentEnd - 1) == '\n')
+				contentEnd--;
+			int quoteEnd = close;
+			while (quoteEnd > contentStart && isS(str.charAt(quoteEnd - 1)))
+				quoteEnd--;
+			quoteEnd--;
+			if (quoteEnd >= contentStart && str.charAt(quoteEnd) == '>') {
+				if (quoteEnd - 1 >= contentStart && str.charAt(quoteEnd - 1) == '\n')
+					quoteEnd--;
+				if (quoteEnd < contentEnd) {
+					contentEnd = quoteEnd;
+					quotedEnd = true;
+				}
+			}
+
+			if (builder == null)
+				builder = new StringBuilder(str.length());
+			builder.append(str, matchEnd, start);
+			if (!appendSpan(builder, new Span(quotedStart, str.substring(contentStart, contentEnd), quotedEnd)))
+				return null;
+
+			matchEnd = skipH(str, close + 6, str.length());
+			if (matchEnd < str.length() && str.charAt(matchEnd) == '\n')
+				matchEnd++;
+		}
+		if (builder == null)
+			return str;
+		builder.append(str, matchEnd, str.length());
+		return builder.toString();
+	}
+
+	/**
+	 * Applies all line based rules except images to {@link #line}, in the order of the regex converter.
+	 */
+	private boolean convertLine() {
+		if (!protectInlineCode())
+			return false;
+		convertList('*', 2, "-");
+		convertList('#', 3, "1.");
+		convertHeading();
+		convertDelimited("__", '_', "_", "_");
+		convertDelimited("*", '*', "**", "**");
+		convertDelimited("+", '+', "++", "++");
+		convertDelimited("-", '-', "~~", "~~");
+		convertCommits();
+		return true;
+	}
+
+	/**
+	 * See {@link RedmineTextileConverter#INLINE_CODE_MATCH}.
+	 */
+	private boolean protectInlineCode() {
+		CharSequence in = line;
+		if (indexOf(in, '@', 0) == -1)
+			return true;
+		StringBuilder out = result;
+		out.setLength(0);
+		int copied = 0;
+		int end = in.length();
+		for (int p = 0; p < end; p++) {
+			if (in.charAt(p) != '@' || !isDelimiterStart(in, p))
+				continue;
+			int s = p + 1;
+			if (s >= end || isH(in.charAt(s)) || in.charAt(s) == '@')
+				continue;
+			int e = findDelimiterEnd(in, "@", s + 1, end);
+			if (e == -1)
+				break;
+			out.append(in, copied, p);
+			if (!appendSpan(out, new Span(in.subSequence(s, e).toString())))
+				return false;
+			copied = e + 1;
+			p = copied - 1;
+		}
+		swap(copied);
+		return true;
+	}
+
+	/**
+	 * See {@link RedmineTextileConverter#UNORDERED_LIST_MATCH} and
+	 * {@link RedmineTextileConverter#ORDERED_LIST_MATCH}.
+	 */
+	private void convertList(char bullet, int indent, String replacement) {
+		CharSequence in = line;
+		int end = in.length();
+		int i = skipH(in, 0, end);
+		if (i < end && in.charAt(i) == '>') {
+			int j = skipH(in, i + 1, end);
+			if (j == i + 1)
+				return;
+			i = j;
+		}
+		int bullets = i;
+		while (bullets < end && in.charAt(bullets) == bullet)
+			bullets++;
+		int count = bullets - i;
+		if (count < 1 || count > 10)
+			return;
+		int k = skipH(in, bullets, end);
+		if (k == bullets || k >= end)
+			return;
+
+		StringBuilder out = result;
+		out.setLength(0);
+		out.append(in, 0, i);
+		for (int n = 0; n < (count - 1) * indent; n++)
+			out.append(' ');
+		out.append(replacement);
+		swap(bullets);
+	}
+
+	/**
+	 * See {@link RedmineTextileConverter#H1_MATCH} etc.
+	 */
+	private void convertHeading() {
+		CharSequence in = line;
+		int end = in.length();
+		int i = skipH(in, 0, end);
+		if (i + 3 >= end || in.charAt(i) != 'h' || in.charAt(i + 2) != '.')
+			return;
+		char level = in.charAt(i + 1);
+		if (level < '1' || level > '4')
+			return;
+		int j = skipH(in, i + 3, end);
+		if (j == i + 3)
+			return;
+
+		StringBuilder out = result;
+		out.setLength(0);
+		for (char c = '1'; c <= level; c++)
+			out.append('#');
+		out.append(' ');
+		swap(j);
+	}
+
+	/**
+	 * See {@link RedmineTextileConverter#ITALIC_MATCH}, {@link RedmineTextileConverter#BOLD_MATCH} etc.
+	 */
+	private void convertDelimited(String delimiter, char delimiterChar, String prefix, String suffix) {
+		CharSequence in = line;
+		char first = delimiter.charAt(0);
+		if (indexOf(in, first, 0) == -1)
+			return;
+		StringBuilder out = result;
+		out.setLength(0);
+		int copied = 0;
+		int end = in.length();
+		int length = delimiter.length();
+		for (int p = 0; p + length <= end; p++) {
+			if (in.charAt(p) != first || !startsWith(in, delimiter, p) || !isDelimiterStart(in, p))
+				continue;
+			int s = p + length;
+			if (s >= end || isH(in.charAt(s)) || in.charAt(s) == delimiterChar)
+				continue;
+			int e = findDelimiterEnd(in, delimiter, s + 1, end);
+			if (e == -1)
+				break;
+			out.append(in, copied, p).append(prefix).append(in, s, e).append(suffix);
+			copied = e + length;
+			p = copied - 1;
+		}
+		swap(copied);
+	}
+
+	private static boolean isDelimiterStart(CharSequence in, int p) {
+		return p == 0 || isH(in.charAt(p - 1)) || in.charAt(p - 1) == '|';
+	}
+
+	/**
+	 * Finds the first closing delimiter at or after given position, which follows a non-whitespace
+	 * character and precedes end of line or a non-word character.
+	 */
+	private static int findDelimiterEnd(CharSequence in, String delimiter, int from, int end) {
+		int length = delimiter.length();
+		for (int e = from; e + length <= end; e++) {
+			if (startsWith(in, delimiter, e) && !isH(in.charAt(e - 1))
+					&& (e + length == end || !isWord(in.charAt(e + length)))) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * See {@link RedmineTextileConverter#COMMIT_MATCH}.
+	 */
+	private void convertCommits() {
+		CharSequence in = line;
+		StringBuilder out = result;
+		out.setLength(0);
+		int copied = 0;
+		int end = in.length();
+		for (int p = 0; p + 7 <= end; p++) {
+			if (in.charAt(p) != 'c' || !startsWith(in, "commit:", p) || (p != 0 && !isH(in.charAt(p - 1))))
+				continue;
+			int i = p + 7;
+			boolean quoted = i < end && in.charAt(i) == '"';
+			if (quoted)
+				i++;
+			int j = i;
+			while (j < end && isHexDigit(in.charAt(j)))
+				j++;
+			if (j - i < 8 || quoted && (j >= end || in.charAt(j) != '"'))
+				continue;
+			out.append(in, copied, p).append(in, i, j).append(' ');
+			copied = quoted ? j + 1 : j;
+			p = copied - 1;
+		}
+		swap(copied);
+	}
+
+	/**
+	 * See {@link RedmineTextileConverter#WIKI_LINK_MATCH}. Wiki links may span lines.
+	 */
+	private static CharSequence removeWikiLinks(StringBuilder in) {
+		int p = in.indexOf("[[");
+		if (p == -1)
+			return in;
+		StringBuilder out = new StringBuilder(in.length());
+		int copied = 0;
+		int end = in.length();
+		while (p != -1 && p + 2 < end) {
+			int e = -1;
+			int forbidden = -1;
+			for (int i = p + 2; i < end; i++) {
+				char c = in.charAt(i);
+				if (c == '#' || c == '|' || c == ':') {
+					forbidden = i;
+					break;
+				}
+				if (i >= p + 3 && c == ']' && i + 1 < end && in.charAt(i + 1) == ']') {
+					e = i;
+					break;
+				}
+			}
+			if (e != -1) {
+				out.append(in, copied, p).append(in, p + 2, e);
+				copied = e + 2;
+				p = in.indexOf("[[", copied);
+			} else if (forbidden != -1) {
+				p = in.indexOf("[[", Math.max(p + 1, forbidden + 1));
+			} else {
+				break;
+			}
+		}
+		out.append(in, copied, end);
+		return out;
+	}
+
+	/**
+	 * See {@link RedmineTextileConverter#IMAGE_TITLE_MATCH} and {@link RedmineTextileConverter#IMAGE_MATCH}.
+	 */
+	private void convertImages(boolean withTitle) {
+		CharSequence in = line;
+		if (indexOf(in, '!', 0) == -1)
+			return;
+		StringBuilder out = result;
+		out.setLength(0);
+		int copied = 0;
+		int end = in.length();
+		for (int p = 0; p < end; p++) {
+			if (in.charAt(p) != '!' || (p != 0 && !isH(in.charAt(p - 1))))
+				continue;
+			int[] match = null;
+			boolean exhausted = false;
+			if (p + 1 < end && in.charAt(p + 1) == '>' && (p + 2 >= end || !isH(in.charAt(p + 2)))) {
+				match = findImage(in, p + 2, end, withTitle);
+				if (match != null)
+					match[0] = p + 2;
+			}
+			if (match == null && (p + 1 >= end || !isH(in.charAt(p + 1)))) {
+				match = findImage(in, p + 1, end, withTitle);
+				if (match != null)
+					match[0] = p + 1;
+				else
+					exhausted = true;
+			}
+			if (match == null) {
+				if (exhausted)
+					break;
+				continue;
+			}
+
+			// match: url start, url end, title end (exclusive, before ")!") or -1
+			out.append(in, copied, p).append("![");
+			if (withTitle)
+				out.append(in, match[1] + 1, match[2]);
+			else
+				out.append(in, match[0], match[1]);
+			out.append("](").append(in, match[0], match[1]).append(')');
+			copied = withTitle ? match[2] + 2 : match[1] + 1;
+			p = copied - 1;
+		}
+		swap(copied);
+	}
+
+	/**
+	 * Finds the first image url starting at given position, that is at least one character followed
+	 * by an image extension and either <tt>!</tt> or a title in parentheses followed by <tt>!</tt>.
+	 *
+	 * @return array of url start (to be filled in by caller), url end and title end, or <tt>null</tt> if not found
+	 */
+	@Nullable
+	private static int[] findImage(CharSequence in, int urlStart, int end, boolean withTitle) {
+		for (int m = urlStart + 1; m < end; m++) {
+			if (in.charAt(m) != '.')
+				continue;
+			for (String extension: IMAGE_EXTENSIONS) {
+				if (!regionMatchesIgnoreCase(in, m, extension))
+					continue;
+				int urlEnd = m + extension.length();
+				if (withTitle) {
+					if (urlEnd < end && in.charAt(urlEnd) == '(') {
+						for (int y = urlEnd + 2; y + 1 < end; y++) {
+							if (in.charAt(y) == ')' && in.charAt(y + 1) == '!')
+								return new int[] {urlStart, urlEnd, y};
+						}
+						// no title end after this url, so neither after any later one
+						return null;
+					}
+				} else if (urlEnd < end && in.charAt(urlEnd) == '!') {
+					return new int[] {urlStart, urlEnd, -1};
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Expands protected spans of given text.
+	 */
+	private void expand(CharSequence in, StringBuilder out) {
+		for (int i = 0; i < in.length(); i++) {
+			char c = in.charAt(i);
+			if (c < FIRST_SPAN || c > LAST_SPAN) {
+				out.append(c);
+				continue;
+			}
+			Span span = spans.get(c - FIRST_SPAN);
+			if (span.inlineCode) {
+				out.append('`');
+				expand(span.content, out);
+				out.append('`');
+			} else {
+				String value = span.content;
+				String value2 = PRE_CODE_PATTERN.matcher(value).replaceAll(RedmineTextileConverter.PRE_CODE_REPLACE);
+				out.append(span.quotedStart ? "> ~~~" : "~~~");
+				if (value2.equals(value))
+					out.append('\n');
+				out.append(value2);
+				out.append(span.quotedEnd ? "\n> ~~~\n" : "\n~~~\n");
+			}
+		}
+	}
+
+	private boolean appendSpan(StringBuilder builder, Span span) {
+		if (spans.size() > LAST_SPAN - FIRST_SPAN)
+			return false;
+		builder.append((char) (FIRST_SPAN + spans.size()));
+		spans.add(span);
+		return true;
+	}
+
+	/**
+	 * Completes {@link #result} with the rest of {@link #line} after given position, and makes it the new line.
+	 */
+	private void swap(int copied) {
+		if (copied == 0 && result.length() == 0)
+			return;
+		result.append(line, copied, line.length());
+		StringBuilder temp = line;
+		line = result;
+		result = temp;
+	}
+
+	private static int skipH(CharSequence in, int from, int end) {
+		while (from < end && isH(in.charAt(from)))
+			from++;
+		return from;
+	}
+
+	private static int indexOf(CharSequence in, char c, int from) {
+		for (int i = from; i < in.length(); i++) {
+			if (in.charAt(i) == c)
+				return i;
+		}
+		return -1;
+	}
+
+	private static boolean startsWith(CharSequence in, String prefix, int offset) {
+		if (offset + prefix.length() > in.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (in.charAt(offset + i) != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean endsWith(CharSequence in, int from, String suffix) {
+		int offset = in.length() - suffix.length();
+		return offset >= from && startsWith(in, suffix, offset);
+	}
+
+	private static boolean regionMatchesIgnoreCase(CharSequence in, int offset, String lowerCase) {
+		if (offset + lowerCase.length() > in.length())
+			return false;
+		for (int i = 0; i < lowerCase.length(); i++) {
+			char c = in.charAt(offset + i);
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			if (c != lowerCase.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as regex <tt>\h</tt>.
+	 */
+	private static boolean isH(char c) {
+		return c == ' ' || c == '\t' || c == '\u00A0' || c == '\u1680' || c == '\u180E'
+				|| (c >= '\u2000' && c <= '\u200A') || c == '\u202F' || c == '\u205F' || c == '\u3000';
+	}
+
+	/**
+	 * Same as regex <tt>\s</tt>.
+	 */
+	private static boolean isS(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Same as regex <tt>\w</tt>.
+	 */
+	private static boolean isWord(char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+	}
+
+	private static boolean isHexDigit(char c) {
+		return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+	}
+
+	private static class Span {
+
+		final boolean inlineCode;
+
+		final boolean quotedStart;
+
+		final String content;
+
+		final boolean quotedEnd;
+
+		Span(String inlineCode) {
+			this.inlineCode = true;
+			this.quotedStart = false;
+			this.content = inlineCode;
+			this.quotedEnd = false;
+		}
+
+		Span(boolean quotedStart, String preformatted, boolean quotedEnd) {
+			this.inlineCode = false;
+			this.quotedStart = quotedStart;
+			this.content = preformatted;
+			this.quotedEnd = quotedEnd;
+		}
+
+	}
+
+}
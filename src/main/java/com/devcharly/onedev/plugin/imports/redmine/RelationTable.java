@@ -0,0 +1,69 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact table of Redmine issue relations, one row of relation ID, issue ID, related issue ID
+ * and relation type ordinal per relation. Redmine returns a relation for both related issues,
+ * so rows are unique by relation ID.
+ */
+class RelationTable {
+
+	private final LongLongMap rowsById = new LongLongMap();
+
+	private final List<String> types = new ArrayList<>();
+
+	private long[] issueIds = new long[16];
+
+	private long[] issueToIds = new long[16];
+
+	private byte[] typeOrdinals = new byte[16];
+
+	private int size;
+
+	/**
+	 * Adds given relation unless a relation of same ID was added before.
+	 */
+	void add(long id, long issueId, long issueToId, String type) {
+		if (rowsById.containsKey(id))
+			return;
+
+		int typeOrdinal = types.indexOf(type);
+		if (typeOrdinal == -1) {
+			typeOrdinal = types.size();
+			if (typeOrdinal > Byte.MAX_VALUE)
+				throw new IllegalStateException("Too many relation types");
+			types.add(type);
+		}
+
+		if (size == issueIds.length) {
+			issueIds = Arrays.copyOf(issueIds, size << 1);
+			issueToIds = Arrays.copyOf(issueToIds, size << 1);
+			typeOrdinals = Arrays.copyOf(typeOrdinals, size << 1);
+		}
+		issueIds[size] = issueId;
+		issueToIds[size] = issueToId;
+		typeOrdinals[size] = (byte) typeOrdinal;
+		rowsById.put(id, size);
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long getIssueId(int row) {
+		return issueIds[row];
+	}
+
+	long getIssueToId(int row) {
+		return issueToIds[row];
+	}
+
+	String getType(int row) {
+		return types.get(typeOrdinals[row]);
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counters of a single import, reported in the {@link ImportResult}.
+ */
+class RequestStats {
+
+	final AtomicInteger requests = new AtomicInteger();
+
+	final AtomicInteger inFlightRequests = new AtomicInteger();
+
+	final AtomicInteger retries = new AtomicInteger();
+
+	final AtomicLong throttleWaitMillis = new AtomicLong();
+
+	final AtomicInteger circuitOpenings = new AtomicInteger();
+
+	void addTo(ImportResult result) {
+		result.statistics.put("Redmine requests", String.valueOf(requests.get()));
+		if (retries.get() != 0)
+			result.statistics.put("Retried requests", String.valueOf(retries.get()));
+		if (throttleWaitMillis.get() != 0)
+			result.statistics.put("Throttle wait time", (throttleWaitMillis.get() / 1000) + " s");
+		if (circuitOpenings.get() != 0)
+			result.statistics.put("Pauses because Redmine server degraded", String.valueOf(circuitOpenings.get()));
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Protects the Redmine server from being overloaded by an import: limits the request rate with
+ * a token bucket, computes retry delays with exponential backoff and jitter, and pauses all
+ * requests for a while (opens the circuit) if too many requests failed in a row.
+ */
+class RequestThrottle {
+
+	private static final long INITIAL_RETRY_DELAY = 1000;
+
+	private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(2);
+
+	private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+
+	private static final long CIRCUIT_OPEN_TIME = TimeUnit.SECONDS.toMillis(30);
+
+	@Nullable
+	private final RateLimiter rateLimiter;
+
+	private final int maxRetries;
+
+	private int consecutiveFailures;
+
+	private long circuitOpenUntil;
+
+	RequestThrottle(double requestsPerSecond, int maxRetries) {
+		rateLimiter = requestsPerSecond > 0 ? RateLimiter.create(requestsPerSecond) : null;
+		this.maxRetries = maxRetries;
+	}
+
+	int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Waits until a request may be sent.
+	 */
+	void acquire(RequestStats stats) throws InterruptedException {
+		long circuitDelay;
+		while ((circuitDelay = getCircuitDelay()) > 0) {
+			stats.throttleWaitMillis.addAndGet(circuitDelay);
+			Thread.sleep(circuitDelay);
+		}
+		if (rateLimiter != null) {
+			double waited = rateLimiter.acquire();
+			stats.throttleWaitMillis.addAndGet((long) (waited * 1000));
+		}
+	}
+
+	private synchronized long getCircuitDelay() {
+		return Math.max(0, circuitOpenUntil - System.currentTimeMillis());
+	}
+
+	synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+	}
+
+	synchronized void recordFailure(RequestStats stats) {
+		consecutiveFailures++;
+		long now = System.currentTimeMillis();
+		if (consecutiveFailures >= CIRCUIT_FAILURE_THRESHOLD && circuitOpenUntil <= now) {
+			circuitOpenUntil = now + CIRCUIT_OPEN_TIME;
+			stats.circuitOpenings.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets delay before given retry attempt (starting with 0), honouring a <tt>Retry-After</tt>
+	 * header value if there is one.
+	 */
+	static long getRetryDelay(int attempt, @Nullable String retryAfter) {
+		if (retryAfter != null) {
+			long delay = parseRetryAfter(retryAfter);
+			if (delay >= 0)
+				return Math.min(delay, MAX_RETRY_DELAY);
+		}
+		long delay = Math.min(INITIAL_RETRY_DELAY << Math.min(attempt, 16), MAX_RETRY_DELAY);
+		// use half of the delay plus random jitter so that concurrent requests do not retry in lockstep
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private static long parseRetryAfter(String retryAfter) {
+		retryAfter = retryAfter.trim();
+		try {
+			return Long.parseLong(retryAfter) * 1000;
+		} catch (NumberFormatException e) {
+			try {
+				ZonedDateTime date = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+				return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+			} catch (DateTimeParseException e2) {
+				return -1;
+			}
+		}
+	}
+
+	static boolean isRetryable(int status) {
+		return status == 429 || status == 502 || status == 503 || status == 504;
+	}
+
+}
@@ -0,0 +1,210 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+
+import io.onedev.server.OneDev;
+
+/**
+ * On-disk cache of Redmine API responses keyed by endpoint url, so that dry runs, real runs
+ * and re-runs of failed imports do not download unchanged documents again. Entries are stored
+ * below the OneDev site directory, separately for each Redmine server and access key. A cache
+ * is shared by all clients of a server, and its directory is scanned for expired entries at
+ * most once per {@link #PRUNE_INTERVAL} or when it gets too large, not each time a client is built.
+ * Caches of servers which are no longer used are forgotten once they would be scanned again anyway.
+ */
+class ResponseCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+	private static final long PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+	private static final Map<File, ResponseCache> caches = new HashMap<>();
+
+	private final File dir;
+
+	private volatile long maxSize;
+
+	private volatile long maxAge;
+
+	private long size;
+
+	private volatile long pruneTime;
+
+	// number of clients using this cache, guarded by caches
+	private int references;
+
+	private ResponseCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Opens response cache of given server, or returns <tt>null</tt> if caching is disabled. Each
+	 * cache opened has to be released with {@link #release()}.
+	 */
+	@Nullable
+	static ResponseCache open(ImportServer server) {
+		if (server.getResponseCacheMaxSize() <= 0)
+			return null;
+
+		String serverKey = Hashing.sha256()
+				.hashString(server.getApiUrl() + "\n" + server.getAccessToken(), StandardCharsets.UTF_8)
+				.toString();
+		File dir = new File(ImportUtils.getWorkDir("cache"), serverKey);
+		if (!dir.exists() && !dir.mkdirs())
+			throw new RuntimeException("Unable to create directory: " + dir);
+
+		long maxSize = server.getResponseCacheMaxSize() * 1024L * 1024L;
+		long maxAge = server.getResponseCacheMaxAge() * 3600L * 1000L;
+		ResponseCache cache;
+		synchronized (caches) {
+			long now = System.currentTimeMillis();
+			caches.values().removeIf(it -> it.references == 0 && now - it.pruneTime > PRUNE_INTERVAL);
+			cache = caches.computeIfAbsent(dir, ResponseCache::new);
+			cache.references++;
+		}
+		synchronized (cache) {
+			boolean limitsChanged = maxSize != cache.maxSize || maxAge != cache.maxAge;
+			cache.maxSize = maxSize;
+			cache.maxAge = maxAge;
+			if (limitsChanged || System.currentTimeMillis() - cache.pruneTime > PRUNE_INTERVAL)
+				cache.prune();
+		}
+		return cache;
+	}
+
+	void release() {
+		synchronized (caches) {
+			references--;
+		}
+	}
+
+	@Nullable
+	Entry get(String url) {
+		File file = getFile(url);
+		if (!file.exists())
+			return null;
+		if (maxAge > 0 && System.currentTimeMillis() - file.lastModified() > maxAge) {
+			delete(file);
+			return null;
+		}
+		try {
+			Entry entry = getObjectMapper().readValue(file, Entry.class);
+			return url.equals(entry.url) ? entry : null;
+		} catch (IOException e) {
+			logger.warn("Ignoring unreadable cache entry " + file + ": " + e.getMessage());
+			delete(file);
+			return null;
+		}
+	}
+
+	void put(Entry entry) {
+		File file = getFile(entry.url);
+		File tempFile = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			getObjectMapper().writeValue(tempFile, entry);
+			long oldLength = file.length();
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			synchronized (this) {
+				size += file.length() - oldLength;
+				if (size > maxSize)
+					prune();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to write cache entry " + file + ": " + e.getMessage());
+			delete(tempFile);
+		}
+	}
+
+	/**
+	 * Marks given entry as revalidated, so that it does not expire.
+	 */
+	void touch(Entry entry) {
+		getFile(entry.url).setLastModified(System.currentTimeMillis());
+	}
+
+	private File getFile(String url) {
+		return new File(dir, Hashing.sha256().hashString(url, StandardCharsets.UTF_8).toString() + ".json");
+	}
+
+	/**
+	 * Removes expired entries and, if cache is still too large, the least recently stored ones.
+	 */
+	private synchronized void prune() {
+		long now = System.currentTimeMillis();
+		pruneTime = now;
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+		if (files == null)
+			return;
+
+		List<File> remaining = new ArrayList<>();
+		size = 0;
+		for (File file: files) {
+			if (maxAge > 0 && now - file.lastModified() > maxAge) {
+				delete(file);
+			} else {
+				remaining.add(file);
+				size += file.length();
+			}
+		}
+
+		if (size > maxSize) {
+			File[] sorted = remaining.toArray(new File[0]);
+			Arrays.sort(sorted, Comparator.comparingLong(File::lastModified));
+			// prune to 90% of max size so that we do not prune again with each new entry
+			for (File file: sorted) {
+				if (size <= maxSize * 9 / 10)
+					break;
+				size -= file.length();
+				delete(file);
+			}
+		}
+	}
+
+	private static void delete(File file) {
+		if (file.exists() && !file.delete())
+			logger.warn("Unable to delete " + file);
+	}
+
+	private static ObjectMapper getObjectMapper() {
+		return OneDev.getInstance(ObjectMapper.class);
+	}
+
+	static class Entry {
+
+		public String url;
+
+		/**
+		 * Version of the document known from elsewhere, for instance <tt>updated_on</tt> of
+		 * an issue as listed. An entry with same version does not need to be revalidated.
+		 */
+		public String version;
+
+		public String etag;
+
+		public String lastModified;
+
+		public String body;
+
+	}
+
+}
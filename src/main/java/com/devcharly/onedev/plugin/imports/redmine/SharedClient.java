@@ -0,0 +1,113 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * JAX-RS client shared by all imports from the same Redmine server with the same access key,
+ * so that persistent connections are reused across project choices, option building and
+ * the import itself. A shared client is closed once it has not been used for a while.
+ */
+class SharedClient {
+
+	private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+	private static final Map<String, SharedClient> clients = new HashMap<>();
+
+	private static final ScheduledExecutorService closer = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("redmine-import-client-closer").build());
+
+	private final String key;
+
+	private final Client client;
+
+	private final Semaphore connections;
+
+	private final RequestThrottle throttle;
+
+	private int references;
+
+	private ScheduledFuture<?> closeFuture;
+
+	private SharedClient(String key, Client client, int maxConnections, RequestThrottle throttle) {
+		this.key = key;
+		this.client = client;
+		connections = new Semaphore(maxConnections);
+		this.throttle = throttle;
+	}
+
+	/**
+	 * Gets shared client of given server. Each call has to be paired with a call to {@link #release()}.
+	 */
+	static SharedClient acquire(ImportServer server) {
+		String key = server.getApiUrl() + "\n" + server.getAccessToken() + "\n" + server.getMaxConnections()
+				+ "\n" + server.getRequestsPerSecond() + "\n" + server.getMaxRetries();
+		synchronized (SharedClient.class) {
+			SharedClient sharedClient = clients.get(key);
+			if (sharedClient == null) {
+				sharedClient = new SharedClient(key, server.newClient(), Math.max(1, server.getMaxConnections()),
+						new RequestThrottle(server.getRequestsPerSecond(), server.getMaxRetries()));
+				clients.put(key, sharedClient);
+			}
+			if (sharedClient.closeFuture != null) {
+				sharedClient.closeFuture.cancel(false);
+				sharedClient.closeFuture = null;
+			}
+			sharedClient.references++;
+			return sharedClient;
+		}
+	}
+
+	void release() {
+		synchronized (SharedClient.class) {
+			if (--references == 0)
+				closeFuture = closer.schedule(this::closeIfIdle, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void closeIfIdle() {
+		synchronized (SharedClient.class) {
+			if (references == 0) {
+				clients.remove(key);
+				client.close();
+			}
+		}
+	}
+
+	Client getClient() {
+		return client;
+	}
+
+	/**
+	 * Gets throttle shared by all requests to the Redmine server.
+	 */
+	RequestThrottle getThrottle() {
+		return throttle;
+	}
+
+	/**
+	 * Limits the number of concurrent requests to the Redmine server.
+	 */
+	void acquireConnection() {
+		try {
+			connections.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	void releaseConnection() {
+		connections.release();
+	}
+
+}
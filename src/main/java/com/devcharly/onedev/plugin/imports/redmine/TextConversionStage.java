@@ -0,0 +1,162 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang.StringUtils;
+
+import io.onedev.commons.utils.TaskLogger;
+
+/**
+ * Converts texts of Redmine issues (description and journal notes) to OneDev Markdown on a
+ * fork/join pool. Conversion of an issue starts as soon as its details are fetched, with all
+ * notes converted in parallel, so that issues of a page are converted while the import thread
+ * maps the previous page and the next page is fetched.
+ * <p>
+ * Converted texts are stored in the issue detail next to the original ones, so comments are
+ * created in journal order no matter in which order conversions complete.
+ * <p>
+ * Texts longer than {@link IssueImportOption#getMaxConvertedTextLength()}, or whose conversion
+ * exceeds {@link IssueImportOption#getTextConversionTimeout()}, are kept verbatim in a code block.
+ * Other conversions are looked up in and added to a {@link ConversionCache}.
+ */
+class TextConversionStage implements AutoCloseable {
+
+	private final IssueImportOption importOption;
+
+	private final ImportMetrics metrics;
+
+	private final ForkJoinPool pool;
+
+	@Nullable
+	private final ConversionCache cache;
+
+	private final Set<Long> unconvertedIssueIds = new ConcurrentSkipListSet<>();
+
+	TextConversionStage(IssueImportOption importOption, ImportMetrics metrics) {
+		this.importOption = importOption;
+		this.metrics = metrics;
+		pool = new ForkJoinPool();
+		cache = importOption.isConvertTextileToMarkdown() ? ConversionCache.open(importOption) : null;
+	}
+
+	/**
+	 * Converts texts of given issue detail in the background once it is available.
+	 */
+	CompletableFuture<RedmineIssueDetail> convertAsync(long issueId, CompletableFuture<RedmineIssueDetail> detail) {
+		return detail.thenApplyAsync(it -> convertAll(issueId, it), pool);
+	}
+
+	/**
+	 * Converts texts of given issue detail and waits for completion.
+	 */
+	RedmineIssueDetail convert(long issueId, RedmineIssueDetail detail) {
+		return pool.invoke(ForkJoinTask.adapt(() -> convertAll(issueId, detail)));
+	}
+
+	private RedmineIssueDetail convertAll(long issueId, RedmineIssueDetail detail) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		tasks.add(ForkJoinTask.adapt(() -> {
+			detail.convertedDescription = convert(issueId, detail.description);
+		}));
+		for (RedmineIssueDetail.Journal journal: detail.journals) {
+			tasks.add(ForkJoinTask.adapt(() -> {
+				journal.convertedNotes = convert(issueId, journal.notes);
+			}));
+		}
+		ForkJoinTask.invokeAll(tasks);
+		return detail;
+	}
+
+	@Nullable
+	String convert(long issueId, @Nullable String str) {
+		return convert(issueId, str, new ConversionBudget(importOption.getTextConversionTimeout()));
+	}
+
+	@Nullable
+	String convert(long issueId, @Nullable String str, ConversionBudget budget) {
+		if (str == null || str.isEmpty())
+			return str;
+
+		// normalize line separator to NL
+		str = str.replace("\r\n", "\n").replace("\r", "\n");
+
+		// convert textile to markdown
+		if (importOption.isConvertTextileToMarkdown()) {
+			if (str.length() > importOption.getMaxConvertedTextLength()) {
+				unconvertedIssueIds.add(issueId);
+				return toCodeBlock(str);
+			}
+
+			long start = System.nanoTime();
+			try {
+				String key = ConversionCache.getKey(str);
+				String markdown = cache.get(key);
+				if (markdown != null)
+					return markdown;
+
+				try {
+					if (importOption.isRegexTextileConverter())
+						markdown = RedmineTextileConverter.convertTextileToMarkdown(str, budget);
+					else
+						markdown = RedmineTextileLexer.convertTextileToMarkdown(str, budget);
+				} catch (ConversionBudget.BudgetExceededException e) {
+					unconvertedIssueIds.add(issueId);
+					return toCodeBlock(str);
+				}
+				cache.put(key, markdown);
+				return markdown;
+			} finally {
+				metrics.get(ImportMetrics.CONVERSION).record(System.nanoTime() - start);
+			}
+		}
+
+		return str;
+	}
+
+	/**
+	 * Fences given text with more tildes than any run of tildes in it.
+	 */
+	private static String toCodeBlock(String str) {
+		int maxRun = 0;
+		int run = 0;
+		for (int i = 0; i < str.length(); i++) {
+			if (str.charAt(i) == '~')
+				maxRun = Math.max(maxRun, ++run);
+			else
+				run = 0;
+		}
+		String fence = StringUtils.repeat("~", Math.max(3, maxRun + 1));
+		return fence + "\n" + str + (str.endsWith("\n") ? "" : "\n") + fence;
+	}
+
+	/**
+	 * Number of issue details and texts waiting to be converted.
+	 */
+	long getQueueDepth() {
+		return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+	}
+
+	void log(TaskLogger logger) {
+		if (cache != null)
+			logger.log("Text conversion cache: " + cache.getStatistics());
+	}
+
+	void addTo(ImportResult result) {
+		for (long issueId: unconvertedIssueIds)
+			result.unconvertedTexts.add("#" + issueId);
+	}
+
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Retained heap size of the issue bookkeeping of a large import, against the structures used
+ * before: issue number mappings and parents in <tt>HashMap&lt;Long, Long&gt;</tt>, and relations
+ * as <tt>HashMap&lt;String, JsonNode&gt;</tt> of the relation nodes of Redmine issue details.
+ */
+public class BookkeepingFootprintTest {
+
+	private static final int SIZE = 10000;
+
+	private static final String[] TYPES = {"relates", "duplicates", "blocks", "precedes", "copied_to"};
+
+	@Test
+	public void issueNumbers() {
+		LongLongMap map = new LongLongMap();
+		Map<Long, Long> boxed = new HashMap<>();
+		for (int i = 0; i < SIZE; i++) {
+			// Redmine issue IDs of a project are increasing, with gaps left by other projects
+			long issueId = 1000 + 3L * i;
+			map.put(issueId, i + 1);
+			boxed.put(issueId, (long) i + 1);
+		}
+		assertSmaller("issue numbers", map, boxed, 0.75);
+	}
+
+	@Test
+	public void relations() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		RelationTable table = new RelationTable();
+		Map<String, JsonNode> nodes = new HashMap<>();
+		for (int i = 0; i < SIZE; i++) {
+			long issueId = 1000 + 3L * i;
+			long issueToId = 1000 + 3L * ((i * 7 + 1) % SIZE);
+			String type = TYPES[i % TYPES.length];
+			JsonNode node = mapper.readTree("{\"id\":" + i + ",\"issue_id\":" + issueId + ",\"issue_to_id\":"
+					+ issueToId + ",\"relation_type\":\"" + type + "\",\"delay\":null}");
+			nodes.put(node.get("id").asText(), node);
+			table.add(i, issueId, issueToId, type);
+		}
+		assertSmaller("relations", table, nodes, 0.25);
+	}
+
+	private static void assertSmaller(String name, Object compact, Object baseline, double maxRatio) {
+		long compactSize = GraphLayout.parseInstance(compact).totalSize();
+		long baselineSize = GraphLayout.parseInstance(baseline).totalSize();
+		String sizes = name + " of " + SIZE + " entries: " + compactSize / SIZE + " bytes per entry, against "
+				+ baselineSize / SIZE + " before";
+		assertTrue(sizes, compactSize <= baselineSize * maxRatio);
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Checks that the lexer converts texts exactly as the regex converter: all texts of the corpora
+ * of the benchmarks (<tt>/corpus/&lt;name&gt;.textile</tt>, texts separated by lines <tt>%%</tt>),
+ * and random texts of Textile tokens, half of them from a small set of tokens so that markup is
+ * more often nested or left open.
+ */
+public class ConverterDifferentialTest {
+
+	private static final String[] CORPORA = {"short-notes", "long-log", "nested-lists", "big-pre"};
+
+	private static final long SEED = 1;
+
+	private static final int RANDOM_TEXTS = 20000;
+
+	private static final String[] TOKENS = {
+		"a", "b", "x1", "_", "__", "*", "**", "+", "-", "@", " ", " ", "  ", "\t", "\u00A0", "\n", "\n", "\n\n",
+		"|", ">", "> ", "<pre>", "</pre>", "<pre><code class=\"java\">", "</code></pre>", "<code class=\"c\">", "</code>",
+		"h1. ", "h2.", "h3. ", "h4.\t", "h5. ", "# ", "## ", "* ", "** ", "***********", "###########",
+		"commit:", "commit:\"", "abcdef0123", "12345678", "\"", "[[", "]]", "[", "]", "#", ":", "!", "!>", ".png", ".PNG",
+		".jpg", ".jpeg", ".gif", "(", ")", ")!", "(t)", "img", ".", ",", "\u000B", "\f", "\u00E9", "temptag-"
+	};
+
+	private static final String[] SMALL_TOKENS = {
+		"a", "_", "__", "*", "+", "-", "@", " ", "\n", "|", ">", "<pre>", "</pre>", "!", ".png", "(", ")!", "[[", "]]",
+		"#", "\u00A0", "\t", "commit:", "0123abcd", "\""
+	};
+
+	@Test
+	public void corpus() throws IOException {
+		for (String corpus: CORPORA) {
+			String content;
+			try (InputStream is = getClass().getResourceAsStream("/corpus/" + corpus + ".textile")) {
+				content = IOUtils.toString(is, StandardCharsets.UTF_8);
+			}
+			for (String text: content.split("(?m)^%%\n"))
+				assertSameConversion(text);
+		}
+	}
+
+	@Test
+	public void randomTexts() {
+		Random random = new Random(SEED);
+		for (int i = 0; i < RANDOM_TEXTS; i++) {
+			String[] tokens = random.nextBoolean() ? TOKENS : SMALL_TOKENS;
+			// mostly short texts, some long enough to have several blocks
+			int length = 1 + random.nextInt(random.nextBoolean() ? 12 : (random.nextInt(10) == 0 ? 300 : 40));
+			StringBuilder text = new StringBuilder();
+			for (int j = 0; j < length; j++)
+				text.append(tokens[random.nextInt(tokens.length)]);
+			assertSameConversion(text.toString());
+		}
+	}
+
+	private static void assertSameConversion(String text) {
+		assertEquals("Conversion of \"" + escape(text) + "\"",
+				RedmineTextileConverter.convertTextileToMarkdown(text),
+				RedmineTextileLexer.convertTextileToMarkdown(text));
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\t", "\\t");
+	}
+
+}
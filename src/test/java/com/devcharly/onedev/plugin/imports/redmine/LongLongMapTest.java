@@ -0,0 +1,128 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongLongMapTest {
+
+	@Test
+	public void putAndGet() {
+		LongLongMap map = new LongLongMap();
+		long[] keys = {0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+		for (int i = 0; i < keys.length; i++)
+			map.put(keys[i], i * 10);
+
+		assertEquals(keys.length, map.size());
+		for (int i = 0; i < keys.length; i++) {
+			assertTrue(map.containsKey(keys[i]));
+			assertEquals(i * 10, map.get(keys[i], -1));
+		}
+	}
+
+	@Test
+	public void missingKeyGetsDefault() {
+		LongLongMap map = new LongLongMap();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(0));
+		assertFalse(map.containsKey(Long.MIN_VALUE));
+		assertEquals(-1, map.get(0, -1));
+		assertEquals(-1, map.get(Long.MIN_VALUE, -1));
+
+		map.put(1, 0);
+		assertFalse(map.containsKey(2));
+		assertEquals(42, map.get(2, 42));
+		// a value equal to the default is still found
+		assertTrue(map.containsKey(1));
+	}
+
+	@Test
+	public void putReplacesValue() {
+		LongLongMap map = new LongLongMap();
+		map.put(5, 1);
+		map.put(5, 2);
+		map.put(Long.MIN_VALUE, 1);
+		map.put(Long.MIN_VALUE, 2);
+		assertEquals(2, map.size());
+		assertEquals(2, map.get(5, 0));
+		assertEquals(2, map.get(Long.MIN_VALUE, 0));
+	}
+
+	@Test
+	public void collidingKeys() {
+		// keys differing in high bits only, which are all in the same slot without mixing
+		LongLongMap map = new LongLongMap(4);
+		Map<Long, Long> expected = new HashMap<>();
+		for (long i = 0; i < 1000; i++) {
+			map.put(i << 32, i);
+			map.put(-(i << 40), -i);
+			expected.put(i << 32, i);
+			expected.put(-(i << 40), -i);
+		}
+		assertEntries(expected, map);
+	}
+
+	@Test
+	public void resizeKeepsEntries() {
+		LongLongMap map = new LongLongMap(1);
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			long key = random.nextInt(10) == 0 ? random.nextLong() : random.nextInt(200000);
+			map.put(key, i);
+			expected.put(key, (long) i);
+		}
+		assertEntries(expected, map);
+	}
+
+	@Test
+	public void forEachVisitsEachEntryOnce() {
+		LongLongMap map = new LongLongMap();
+		Map<Long, Long> expected = new HashMap<>();
+		for (long key = -50; key < 50; key++) {
+			map.put(key, key * 2);
+			expected.put(key, key * 2);
+		}
+		map.put(Long.MIN_VALUE, 7);
+		expected.put(Long.MIN_VALUE, 7L);
+
+		Map<Long, Long> visited = new HashMap<>();
+		map.forEach((key, value) -> assertNull(visited.put(key, value)));
+		assertEquals(expected, visited);
+	}
+
+	@Test
+	public void mapView() {
+		LongLongMap map = new LongLongMap();
+		map.put(1, 10);
+		map.put(Long.MIN_VALUE, 20);
+		Map<Long, Long> view = map.asMap();
+
+		assertEquals(2, view.size());
+		assertEquals(Long.valueOf(10), view.get(1L));
+		assertEquals(Long.valueOf(20), view.get(Long.MIN_VALUE));
+		assertNull(view.get(2L));
+		assertNull(view.get("1"));
+		Map<Long, Long> expected = new HashMap<>();
+		expected.put(1L, 10L);
+		expected.put(Long.MIN_VALUE, 20L);
+		assertEquals(expected, new HashMap<>(view));
+	}
+
+	private static void assertEntries(Map<Long, Long> expected, LongLongMap map) {
+		assertEquals(expected.size(), map.size());
+		for (Map.Entry<Long, Long> entry: expected.entrySet())
+			assertEquals(entry.getValue().longValue(), map.get(entry.getKey(), Long.MIN_VALUE));
+		Map<Long, Long> visited = new HashMap<>();
+		map.forEach(visited::put);
+		assertEquals(expected, visited);
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Converts single lines repeating a fragment which starts a Textile rule without ending it, the
+ * worst case of regular expressions with lazy quantifiers (see <tt>PathologicalInputBenchmark</tt>
+ * for timings). The lexer must convert them in time linear to their length, and texts whose
+ * conversion exceeds its budget, or which are too long, must be imported verbatim.
+ */
+public class PathologicalInputTest {
+
+	private static final int LENGTH = 100000;
+
+	private static final String[] FRAGMENTS = {"*a ", "+b ", "- x", "__a", "!x.png(", "<pre>", "[[a", "@x"};
+
+	// the lexer converts a text this many times longer within this many times more time
+	private static final int SCALE = 8;
+
+	private static final int MAX_TIME_RATIO = SCALE * 3;
+
+	private static final int RUNS = 5;
+
+	@Test
+	public void lexerScalesLinearly() {
+		for (String fragment: FRAGMENTS) {
+			String text = repeat(fragment, LENGTH / SCALE);
+			String longText = repeat(fragment, LENGTH);
+			// warm up, so that the short text is not timed interpreted
+			for (int i = 0; i < RUNS; i++)
+				RedmineTextileLexer.convertTextileToMarkdown(longText, ConversionBudget.UNLIMITED);
+
+			long nanos = time(text);
+			long longNanos = time(longText);
+			assertTrue("Conversion of '" + fragment + "' took " + longNanos / 1000 + " us for " + longText.length()
+					+ " characters, against " + nanos / 1000 + " us for " + text.length(),
+					longNanos <= Math.max(nanos, 1000) * MAX_TIME_RATIO);
+		}
+	}
+
+	@Test
+	public void exceededBudgetFallsBackToVerbatim() throws InterruptedException {
+		IssueImportOption importOption = newImportOption();
+		importOption.setRegexTextileConverter(true);
+		ConversionBudget budget = new ConversionBudget(1);
+		Thread.sleep(2);
+		try (TextConversionStage stage = new TextConversionStage(importOption, new ImportMetrics())) {
+			for (int i = 0; i < FRAGMENTS.length; i++) {
+				String text = repeat(FRAGMENTS[i], LENGTH);
+				assertEquals("Verbatim fallback of '" + FRAGMENTS[i] + "'", "~~~\n" + text + "\n~~~",
+						stage.convert(100 + i, text, budget));
+			}
+
+			ImportResult result = new ImportResult();
+			stage.addTo(result);
+			assertEquals(Arrays.asList("#100", "#101", "#102", "#103", "#104", "#105", "#106", "#107"),
+					new ArrayList<>(result.unconvertedTexts));
+		}
+	}
+
+	@Test
+	public void tooLongTextIsImportedVerbatim() {
+		IssueImportOption importOption = newImportOption();
+		importOption.setMaxConvertedTextLength(LENGTH - 1);
+		try (TextConversionStage stage = new TextConversionStage(importOption, new ImportMetrics())) {
+			for (String fragment: FRAGMENTS) {
+				String text = repeat(fragment, LENGTH);
+				assertEquals("Verbatim text of '" + fragment + "'", "~~~\n" + text + "\n~~~", stage.convert(1, text));
+			}
+
+			ImportResult result = new ImportResult();
+			stage.addTo(result);
+			assertEquals(Arrays.asList("#1"), new ArrayList<>(result.unconvertedTexts));
+		}
+	}
+
+	private static IssueImportOption newImportOption() {
+		IssueImportOption importOption = new IssueImportOption();
+		importOption.setConvertTextileToMarkdown(true);
+		// no disk tier, which lives below the OneDev site directory
+		importOption.setConversionCacheMaxSize(0);
+		return importOption;
+	}
+
+	/**
+	 * Best time of a few conversions, to leave out garbage collections and other threads.
+	 */
+	private static long time(String text) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			RedmineTextileLexer.convertTextileToMarkdown(text, ConversionBudget.UNLIMITED);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	private static String repeat(String fragment, int length) {
+		StringBuilder builder = new StringBuilder(length + fragment.length());
+		while (builder.length() < length)
+			builder.append(fragment);
+		return builder.toString();
+	}
+
+}
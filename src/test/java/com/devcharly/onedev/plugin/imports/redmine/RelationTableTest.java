@@ -0,0 +1,57 @@
+package com.devcharly.onedev.plugin.imports.redmine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RelationTableTest {
+
+	private static final String[] TYPES = {"relates", "duplicates", "blocks", "precedes", "copied_to"};
+
+	@Test
+	public void addAndRead() {
+		RelationTable relations = new RelationTable();
+		for (int i = 0; i < 1000; i++)
+			relations.add(i, 100 + i, 10000 - i, TYPES[i % TYPES.length]);
+
+		assertEquals(1000, relations.size());
+		for (int row = 0; row < 1000; row++) {
+			assertEquals(100 + row, relations.getIssueId(row));
+			assertEquals(10000 - row, relations.getIssueToId(row));
+			assertEquals(TYPES[row % TYPES.length], relations.getType(row));
+		}
+	}
+
+	@Test
+	public void relationOfSameIdIsAddedOnce() {
+		RelationTable relations = new RelationTable();
+		// Redmine returns a relation with both related issues
+		relations.add(7, 1, 2, "blocks");
+		relations.add(8, 2, 3, "relates");
+		relations.add(7, 1, 2, "blocks");
+
+		assertEquals(2, relations.size());
+		assertEquals(1, relations.getIssueId(0));
+		assertEquals(2, relations.getIssueToId(0));
+		assertEquals("blocks", relations.getType(0));
+		assertEquals(2, relations.getIssueId(1));
+		assertEquals("relates", relations.getType(1));
+	}
+
+	@Test
+	public void manyTypes() {
+		RelationTable relations = new RelationTable();
+		for (int i = 0; i <= Byte.MAX_VALUE; i++)
+			relations.add(i, i, i + 1, "type" + i);
+		for (int row = 0; row <= Byte.MAX_VALUE; row++)
+			assertEquals("type" + row, relations.getType(row));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void tooManyTypes() {
+		RelationTable relations = new RelationTable();
+		for (int i = 0; i <= Byte.MAX_VALUE + 1; i++)
+			relations.add(i, i, i + 1, "type" + i);
+	}
+
+}